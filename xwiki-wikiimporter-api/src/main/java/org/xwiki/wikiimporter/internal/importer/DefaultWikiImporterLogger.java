@@ -19,6 +19,7 @@
  */
 package org.xwiki.wikiimporter.internal.importer;
 
+import java.util.Collections;
 import java.util.LinkedList;
 import java.util.List;
 
@@ -38,7 +39,10 @@ public class DefaultWikiImporterLogger implements WikiImporterLogger
 
     private static final int WARNING = 3;
 
-    private static PageLog pageLog;
+    /**
+     * The log of the page being imported by the current thread.
+     */
+    private final ThreadLocal<PageLog> pageLog = new ThreadLocal<PageLog>();
 
     private static final String START_TAG = "{{velocity}}\n $xwiki.ssx.use(\"WikiImporter.SSX\")\n{{html}}";
 
@@ -60,7 +64,7 @@ public class DefaultWikiImporterLogger implements WikiImporterLogger
 
     private static final String UL_END_TAG = "</ul>";
 
-    private List<Log> logs = new LinkedList<Log>();
+    private List<Log> logs = Collections.synchronizedList(new LinkedList<Log>());
 
     // Page log class to report page specific information.
     public class PageLog extends Log
@@ -137,10 +141,10 @@ public class DefaultWikiImporterLogger implements WikiImporterLogger
         }
 
         if (isPage) {
-            if (pageLog == null) {
+            if (pageLog.get() == null) {
                 nextPage();
             }
-            pageLog.getPageLog().append(infoStr);
+            pageLog.get().getPageLog().append(infoStr);
         } else {
             Log logTmp = new Log();
             logs.add(logTmp);
@@ -155,7 +159,17 @@ public class DefaultWikiImporterLogger implements WikiImporterLogger
      */
     public PageLog getPageLog()
     {
-        return pageLog;
+        return pageLog.get();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.internal.importer.WikiImporterLogger#setPageLog(WikiImporterLogger.Log)
+     */
+    public void setPageLog(Log log)
+    {
+        pageLog.set((PageLog) log);
     }
 
     /**
@@ -167,7 +181,7 @@ public class DefaultWikiImporterLogger implements WikiImporterLogger
     {
         PageLog newPageLog = new PageLog();
         logs.add(newPageLog);
-        pageLog = newPageLog;
+        pageLog.set(newPageLog);
     }
 
     /**
@@ -188,6 +202,7 @@ public class DefaultWikiImporterLogger implements WikiImporterLogger
     public void clearAllLogs()
     {
         logs.clear();
+        pageLog.remove();
     }
 
     /**
@@ -199,10 +214,12 @@ public class DefaultWikiImporterLogger implements WikiImporterLogger
     {
         StringBuilder logStr = new StringBuilder();
         logStr.append(START_TAG + "<ul class=\"importer\">");
-        for (Log log : logs) {
-            logStr.append(log.getLog() + NEW_LINE);
-            if (log instanceof PageLog) {
-                logStr.append(((PageLog) log).getPageLog() + UL_END_TAG + NEW_LINE);
+        synchronized (logs) {
+            for (Log log : logs) {
+                logStr.append(log.getLog() + NEW_LINE);
+                if (log instanceof PageLog) {
+                    logStr.append(((PageLog) log).getPageLog() + UL_END_TAG + NEW_LINE);
+                }
             }
         }
         logStr.append("</ul>" + END_TAG);
@@ -59,6 +59,14 @@ public interface WikiImporterLogger
      */
     public Log getPageLog();
 
+    /**
+     * Makes the given page log the page log in use by the current thread. Used when the import of a page continues on
+     * another thread.
+     * 
+     * @param pageLog the page log to use.
+     */
+    public void setPageLog(Log pageLog);
+
     /**
      * Creates page log object for a new page.
      */
@@ -19,7 +19,11 @@
  */
 package org.xwiki.wikiimporter.wiki;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
 
 /**
  * @version $Id$
@@ -55,6 +59,42 @@ public abstract class AbstractAttachment implements Attachment
         return fileName;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.Attachment#getContentAsStream()
+     */
+    public InputStream getContentAsStream() throws IOException
+    {
+        if (attachmentAsFile != null) {
+            return new FileInputStream(attachmentAsFile);
+        }
+
+        byte[] content = getContent();
+
+        return content != null ? new ByteArrayInputStream(content) : null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.Attachment#release()
+     */
+    public void release()
+    {
+        // Nothing to release by default.
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.Attachment#onStored()
+     */
+    public void onStored()
+    {
+        // Nothing to do by default.
+    }
+
     /**
      * {@inheritDoc}
      * 
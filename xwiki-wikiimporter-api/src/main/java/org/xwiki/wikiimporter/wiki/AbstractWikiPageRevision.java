@@ -19,6 +19,7 @@
  */
 package org.xwiki.wikiimporter.wiki;
 
+import java.util.Date;
 import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Set;
@@ -37,6 +38,8 @@ public abstract class AbstractWikiPageRevision implements WikiPageRevision
 
     protected String author;
 
+    protected Date date;
+
     protected String comment;
 
     protected String version;
@@ -51,6 +54,8 @@ public abstract class AbstractWikiPageRevision implements WikiPageRevision
 
     protected String originalContent;
 
+    protected String renderedContent;
+
     public AbstractWikiPageRevision()
     {
     }
@@ -60,12 +65,20 @@ public abstract class AbstractWikiPageRevision implements WikiPageRevision
         setTitle(previousWikiPageRevision.getTitle());
         setParent(previousWikiPageRevision.getParent());
         setAuthor(previousWikiPageRevision.getAuthor());
+        setDate(previousWikiPageRevision.getDate());
         setComment(previousWikiPageRevision.getComment());
         setVersion(previousWikiPageRevision.getVersion());
         setMinorEdit(previousWikiPageRevision.isMinorEdit());
         setTags(previousWikiPageRevision.getTags());
-        setContent(previousWikiPageRevision.getContent());
+        // Copy the fields rather than calling the getters, which may build the content on demand.
         setOriginalContent(previousWikiPageRevision.getOriginalContent());
+        if (previousWikiPageRevision instanceof AbstractWikiPageRevision) {
+            setContent(((AbstractWikiPageRevision) previousWikiPageRevision).content);
+            setRenderedContent(((AbstractWikiPageRevision) previousWikiPageRevision).renderedContent);
+        } else {
+            setContent(previousWikiPageRevision.getContent());
+            setRenderedContent(previousWikiPageRevision.getRenderedContent());
+        }
     }
 
     public AbstractWikiPageRevision(String title, String author, String comment, String version, boolean minorEdit)
@@ -127,6 +140,16 @@ public abstract class AbstractWikiPageRevision implements WikiPageRevision
         return this.author;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.WikiPageRevision#getDate()
+     */
+    public Date getDate()
+    {
+        return this.date;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -157,6 +180,16 @@ public abstract class AbstractWikiPageRevision implements WikiPageRevision
         return this.originalContent;
     }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.WikiPageRevision#getRenderedContent()
+     */
+    public String getRenderedContent()
+    {
+        return this.renderedContent;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -185,6 +218,14 @@ public abstract class AbstractWikiPageRevision implements WikiPageRevision
         this.author = author;
     }
 
+    /**
+     * @param date the date to set
+     */
+    public void setDate(Date date)
+    {
+        this.date = date;
+    }
+
     /**
      * @param comment the comment to set
      */
@@ -225,6 +266,14 @@ public abstract class AbstractWikiPageRevision implements WikiPageRevision
         this.originalContent = textContent;
     }
 
+    /**
+     * @param renderedContent the content already rendered in XWiki syntax
+     */
+    public void setRenderedContent(String renderedContent)
+    {
+        this.renderedContent = renderedContent;
+    }
+
     public void addAttachment(Attachment attachment)
     {
         this.attachmentList.add(attachment);
@@ -19,6 +19,9 @@
  */
 package org.xwiki.wikiimporter.wiki;
 
+import java.io.IOException;
+import java.io.InputStream;
+
 /**
  * Attachment interface is used to handle attachments during import process by Wiki Importer.
  * 
@@ -37,6 +40,25 @@ public interface Attachment
      */
     public byte[] getContent();
 
+    /**
+     * Unlike {@link #getContent()}, the content isn't loaded in memory, so large attachments should be read this way.
+     * 
+     * @return a stream on the content of attachment, to be closed by the caller, <tt>null</tt> if there's no content
+     * @throws IOException if the content can't be opened
+     */
+    public InputStream getContentAsStream() throws IOException;
+
+    /**
+     * Releases the resources held by the attachment, such as a temporary copy of its content. Called once the page of
+     * the attachment is stored or dropped, the content can't be read afterwards.
+     */
+    public void release();
+
+    /**
+     * Called by the document bridge once the content of the attachment is stored.
+     */
+    public void onStored();
+
     /**
      * @return the MIME type of attachment.
      */
@@ -19,6 +19,7 @@
  */
 package org.xwiki.wikiimporter.wiki;
 
+import java.util.Date;
 import java.util.List;
 import java.util.Set;
 
@@ -41,6 +42,11 @@ public interface WikiPageRevision
      */
     public String getAuthor();
 
+    /**
+     * @return the date of Page revision, <tt>null</tt> if unknown.
+     */
+    public Date getDate();
+
     /**
      * @return the name of parent page.
      */
@@ -61,6 +67,12 @@ public interface WikiPageRevision
      */
     public XDOM getContent();
 
+    /**
+     * @return the content of Page revision already rendered in XWiki syntax, or <tt>null</tt> if it has to be rendered
+     *         from {@link #getContent()}.
+     */
+    public String getRenderedContent();
+
     /**
      * @return the original text content of Page revision.
      */
@@ -19,26 +19,39 @@
  */
 package org.xwiki.wikiimporter.internal.bridge;
 
+import java.io.InputStream;
+import java.util.Date;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.apache.commons.io.IOUtils;
 import org.apache.commons.lang.StringUtils;
 import org.xwiki.bridge.DocumentAccessBridge;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.Requirement;
 import org.xwiki.component.logging.AbstractLogEnabled;
+import org.xwiki.context.Execution;
 import org.xwiki.model.reference.AttachmentReference;
 import org.xwiki.model.reference.DocumentReference;
 import org.xwiki.model.reference.DocumentReferenceResolver;
 import org.xwiki.model.reference.EntityReferenceSerializer;
+import org.xwiki.rendering.block.XDOM;
 import org.xwiki.rendering.renderer.BlockRenderer;
 import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
 import org.xwiki.wikiimporter.bridge.WikiImporterDocumentBridge;
 import org.xwiki.wikiimporter.importer.WikiImportParameters;
 import org.xwiki.wikiimporter.importer.WikiImporterException;
 import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.wiki.AbstractWikiPageRevision;
 import org.xwiki.wikiimporter.wiki.Attachment;
 import org.xwiki.wikiimporter.wiki.WikiPage;
 import org.xwiki.wikiimporter.wiki.WikiPageRevision;
 
-import java.util.ArrayList;
+import com.xpn.xwiki.XWikiContext;
+import com.xpn.xwiki.doc.XWikiAttachment;
+import com.xpn.xwiki.doc.XWikiDocument;
+import com.xpn.xwiki.doc.XWikiDocumentArchive;
 
 /**
  * Default Implementation for WikiImporterDocumentBridge.
@@ -48,6 +61,16 @@ import java.util.ArrayList;
 @Component
 public class DefaultWikiImporterDocumentBridge extends AbstractLogEnabled implements WikiImporterDocumentBridge
 {
+    private static final String XWIKI_SYNTAX = "xwiki/2.0";
+
+    private static final String PLAIN_SYNTAX = "plain/1.0";
+
+    private static final String TAG_CLASS = "XWiki.TagClass";
+
+    private static final String TAG_PROPERTY = "tags";
+
+    private static final String USER_SPACE = "XWiki";
+
     @Requirement
     private DocumentAccessBridge docAccessBridge;
 
@@ -63,6 +86,9 @@ public class DefaultWikiImporterDocumentBridge extends AbstractLogEnabled implem
     @Requirement
     private DocumentReferenceResolver<String> resolver;
 
+    @Requirement
+    private Execution execution;
+
     /**
      * {@inheritDoc}
      * 
@@ -80,6 +106,19 @@ public class DefaultWikiImporterDocumentBridge extends AbstractLogEnabled implem
      *      WikiImportParameters)
      */
     public void addWikiPage(WikiPage page, WikiImportParameters parameters) throws WikiImporterException
+    {
+        try {
+            storeWikiPage(page, parameters);
+        } finally {
+            // The attachments which weren't stored, because of a duplicate name, a skipped page or an error, may still
+            // hold temporary files.
+            for (Attachment attachment : page.getAttachments()) {
+                attachment.release();
+            }
+        }
+    }
+
+    private void storeWikiPage(WikiPage page, WikiImportParameters parameters) throws WikiImporterException
     {
         // Skip creating pages if page name or space is null.
         // TODO Skip pages . CSS Category JSX and stuff.
@@ -120,8 +159,14 @@ public class DefaultWikiImporterDocumentBridge extends AbstractLogEnabled implem
         String stringReference = this.serializer.serialize(documentReference);
 
         try {
-            System.out.println("Attachments: " + page.getAttachments().size());
-            ArrayList attachList = new ArrayList();
+            // Revisions first: the attachments may only be known once the content of the revisions is parsed.
+            if (parameters.getPreserveHistory()) {
+                addRevisions(documentReference, page.getRevisions());
+            } else {
+                addRevision(documentReference, page.getLastRevision());
+            }
+
+            Set<String> attachList = new HashSet<String>();
 
             // Attachments
             for (Attachment attachment : page.getAttachments()) {
@@ -130,61 +175,117 @@ public class DefaultWikiImporterDocumentBridge extends AbstractLogEnabled implem
                 attachList.add(attachment.getFileName());
                 AttachmentReference attachmentRef =
                     new AttachmentReference(attachment.getFileName(), documentReference);
-                System.out.println("Adding attachment to page " + page.getName() + ": " + attachment.getFileName());
-                this.docAccessBridge.setAttachmentContent(attachmentRef, attachment.getContent());
-            }
-
-            if (parameters.getPreserveHistory()) {
-                System.out.println("Adding all revisions of page " + page.getName());
-                // For each wiki page revision render xdom and set page content.
-                for (WikiPageRevision revision : page.getRevisions()) {
-                    addRevision(documentReference, revision);
-                }
-            } else {
-                System.out.println("Adding last revision of page " + page.getName() + ": " + page.getLastRevision().getVersion());
-                addRevision(documentReference, page.getLastRevision());
+                setAttachmentContent(attachmentRef, attachment);
             }
         } catch (Exception e) {
             getLogger().error("Error while creating the sucessfully parsed page.", e);
             throw new WikiImporterException("Error while creating the sucessfully parsed page.", e);
         }
 
-        System.out.println("Page created " + stringReference);
-      
         // On successful page creation
         this.logger.info(
             "Page Created ->  <a href=\"" + this.docAccessBridge.getDocumentURL(documentReference, "view", "", "")
                 + "\">" + stringReference + "</a>", true);
     }
 
+    /**
+     * Saves the document once with the revision, where going through the {@link DocumentAccessBridge} would load and
+     * save the document for each of its fields.
+     */
     private void addRevision(DocumentReference documentReference, WikiPageRevision revision) throws Exception
     {
-        String stringReference = this.serializer.serialize(documentReference);
+        XWikiContext xcontext = getXWikiContext();
+        XWikiDocument document = xcontext.getWiki().getDocument(documentReference, xcontext);
+
+        applyRevision(document, revision, document.isNew(), xcontext);
+
+        xcontext.getWiki().saveDocument(document, revision.getComment(), revision.isMinorEdit(), xcontext);
+    }
+
+    /**
+     * Writes the whole history of a page at once. The revisions are applied one after the other to the document in
+     * memory, each one but the last being recorded as a new version of the document archive, then the document is
+     * saved once with its last revision, which stores the archive in the same transaction.
+     */
+    private void addRevisions(DocumentReference documentReference, List<WikiPageRevision> revisions)
+        throws Exception
+    {
+        if (revisions.isEmpty()) {
+            return;
+        }
+
+        XWikiContext xcontext = getXWikiContext();
+        XWikiDocument document = xcontext.getWiki().getDocument(documentReference, xcontext);
+        XWikiDocumentArchive archive = document.getDocumentArchive(xcontext);
+        // The document stays new until it's saved: only its first revision creates it.
+        boolean creation = document.isNew();
+
+        for (WikiPageRevision revision : revisions.subList(0, revisions.size() - 1)) {
+            applyRevision(document, revision, creation, xcontext);
+            creation = false;
+            document.setComment(StringUtils.defaultString(revision.getComment()));
+            document.setMinorEdit(revision.isMinorEdit());
+            document.incrementVersion();
+            // The author and the date of the archived version are the ones of the revision, set by applyRevision.
+            archive.updateArchive(document, document.getAuthor(), document.getDate(), document.getComment(),
+                document.getRCSVersion(), xcontext);
+        }
+        // The store adds the last version to this archive instead of loading it again.
+        document.setDocumentArchive(archive);
+
+        WikiPageRevision lastRevision = revisions.get(revisions.size() - 1);
+        applyRevision(document, lastRevision, creation, xcontext);
+        xcontext.getWiki().saveDocument(document, lastRevision.getComment(), lastRevision.isMinorEdit(), xcontext);
+    }
+
+    /**
+     * Applies the content, syntax, title, parent, tags, author and date of the revision to the document in memory.
+     * 
+     * @param creation whether the revision creates the document, its author and date being the creator and creation
+     *            date of the document
+     */
+    private void applyRevision(XWikiDocument document, WikiPageRevision revision, boolean creation,
+        XWikiContext xcontext) throws Exception
+    {
+        DocumentReference documentReference = document.getDocumentReference();
 
         // Document Content
-        DefaultWikiPrinter printer = new DefaultWikiPrinter();
         try {
-        this.renderer.render(revision.getContent(), printer);
-        this.docAccessBridge.setDocumentContent(documentReference, printer.toString(), revision.getComment(),
-            revision.isMinorEdit());
+            String content = revision.getRenderedContent();
+            if (content == null) {
+                XDOM xdom = revision.getContent();
+                if (xdom == null) {
+                    throw new WikiImporterException("The content of the revision couldn't be parsed");
+                }
+                DefaultWikiPrinter printer = new DefaultWikiPrinter();
+                this.renderer.render(xdom, printer);
+                content = printer.toString();
+                // Keep the rendered content rather than the XDOM until the whole page is written.
+                if (revision instanceof AbstractWikiPageRevision) {
+                    ((AbstractWikiPageRevision) revision).setRenderedContent(content);
+                    ((AbstractWikiPageRevision) revision).setContent(null);
+                }
+            }
+            document.setContent(content);
+            document.setSyntaxId(XWIKI_SYNTAX);
         } catch (Exception e) {
-        System.out.println("Failed to render revision " + revision.getTitle() + " for version " + revision.getVersion());
-        this.docAccessBridge.setDocumentContent(documentReference, "FAILED ORIGINAL CONTENT: \n\n" + revision.getOriginalContent(), revision.getComment(),
-            revision.isMinorEdit());       
-        this.docAccessBridge.setDocumentSyntaxId(documentReference, "plain/1.0");
-         e.printStackTrace();
+            String error =
+                "Failed to render the version " + revision.getVersion() + " of the page "
+                    + this.serializer.serialize(documentReference) + ", its original content is kept";
+            this.logger.error(error + ": " + e.getMessage(), true);
+            getLogger().error(error, e);
+            document.setContent("FAILED ORIGINAL CONTENT: \n\n" + revision.getOriginalContent());
+            document.setSyntaxId(PLAIN_SYNTAX);
         }
 
         // Document Title
         if (revision.getTitle() != null) {
-            this.docAccessBridge.setDocumentTitle(documentReference, revision.getTitle());
+            document.setTitle(revision.getTitle());
         }
 
         // Document Parent
         if (revision.getParent() != null) {
-            System.out.println("Setting parent: " + revision.getParent());
-            DocumentReference parentReference = this.resolver.resolve(revision.getParent(), documentReference);
-            this.docAccessBridge.setDocumentParentReference(documentReference, parentReference);
+            document.setParentReference(this.resolver.resolve(revision.getParent(), documentReference));
         }
 
         // Document Tags
@@ -193,10 +294,80 @@ public class DefaultWikiImporterDocumentBridge extends AbstractLogEnabled implem
             for (String tag : revision.getTags()) {
                 tagString.append(tag + "|");
             }
-            this.docAccessBridge.setProperty(stringReference, "XWiki.TagClass", "tags", tagString.toString());
+            document.getObject(TAG_CLASS, true, xcontext).set(TAG_PROPERTY, tagString.toString(), xcontext);
+        }
+
+        // Document Author and Date
+        String author = getAuthor(documentReference, revision, xcontext);
+        Date date = revision.getDate() != null ? revision.getDate() : new Date();
+        document.setAuthor(author);
+        document.setContentAuthor(author);
+        document.setDate(date);
+        document.setContentUpdateDate(date);
+        if (creation) {
+            document.setCreator(author);
+            document.setCreationDate(date);
+        }
+    }
+
+    /**
+     * @return the XWiki user of the wiki of the document named after the author of the revision, or the current user
+     *         when the author is unknown
+     */
+    private String getAuthor(DocumentReference documentReference, WikiPageRevision revision, XWikiContext xcontext)
+    {
+        if (StringUtils.isBlank(revision.getAuthor())) {
+            return xcontext.getUser();
+        }
+
+        return this.serializer.serialize(new DocumentReference(documentReference.getWikiReference().getName(),
+            USER_SPACE, revision.getAuthor()));
+    }
+
+    /**
+     * Streams the content of the attachment from its source instead of going through
+     * {@link DocumentAccessBridge#setAttachmentContent(AttachmentReference, byte[])}, which needs the whole content in
+     * memory.
+     */
+    private void setAttachmentContent(AttachmentReference attachmentReference, Attachment attachment)
+        throws Exception
+    {
+        InputStream content = attachment.getContentAsStream();
+        if (content == null) {
+            this.logger.warn("Attachment Skipped - " + attachment.getFileName() + " can't be found.", true);
+            return;
+        }
+
+        try {
+            XWikiContext xcontext = getXWikiContext();
+            XWikiDocument document =
+                xcontext.getWiki().getDocument(attachmentReference.getDocumentReference(), xcontext);
+            XWikiAttachment xattachment = document.getAttachment(attachmentReference.getName());
+            if (xattachment == null) {
+                xattachment = new XWikiAttachment(document, attachmentReference.getName());
+                document.getAttachmentList().add(xattachment);
+                document.setComment("Add new attachment " + attachmentReference.getName());
+            } else {
+                document.setComment("Update attachment " + attachmentReference.getName());
+            }
+            xattachment.setContent(content);
+            xattachment.setAuthor(xcontext.getUser());
+            document.setAuthor(xcontext.getUser());
+            if (document.isNew()) {
+                document.setCreator(xcontext.getUser());
+            }
+            document.saveAttachmentContent(xattachment, xcontext);
+            attachment.onStored();
+        } finally {
+            IOUtils.closeQuietly(content);
         }
     }
 
+    private XWikiContext getXWikiContext()
+    {
+        return (XWikiContext) this.execution.getContext().getProperty("xwikicontext");
+    }
+
     /**
      * {@inheritDoc}
      * 
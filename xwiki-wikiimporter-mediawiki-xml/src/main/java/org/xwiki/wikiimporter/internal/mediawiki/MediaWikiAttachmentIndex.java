@@ -0,0 +1,186 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.io.File;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.Stack;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import org.apache.commons.lang.StringUtils;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+
+/**
+ * Index of the files of the attachment directory by file name, so that finding the file of an attachment doesn't walk
+ * the directory. The directory is scanned once per import, on the first lookup, each of its sub directories by a
+ * different worker. As with the walk it replaces, the excluded directories are skipped and a file name found in
+ * several directories matches no file.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiAttachmentIndex
+{
+    /**
+     * Marks the file names found in several directories.
+     */
+    private static final File AMBIGUOUS = new File("");
+
+    private final ComponentManager componentManager;
+
+    private final File directory;
+
+    private final Set<String> excludedDirectories;
+
+    private final WikiImporterLogger logger;
+
+    private final ConcurrentMap<String, File> files = new ConcurrentHashMap<String, File>();
+
+    private volatile boolean scanned;
+
+    /**
+     * @param componentManager the component manager, used to create the scanning workers
+     * @param directory the attachment directory
+     * @param excludedDirectories the comma separated names of the directories to skip
+     * @throws ComponentLookupException if the logger can't be found
+     */
+    public MediaWikiAttachmentIndex(ComponentManager componentManager, String directory, String excludedDirectories)
+        throws ComponentLookupException
+    {
+        this.componentManager = componentManager;
+        this.directory = new File(directory);
+        this.excludedDirectories = parseExcludedDirectories(excludedDirectories);
+        this.logger = componentManager.lookup(WikiImporterLogger.class);
+    }
+
+    /**
+     * @param excludedDirectories the comma separated names of the directories to skip
+     * @return the names of the directories to skip
+     */
+    public static Set<String> parseExcludedDirectories(String excludedDirectories)
+    {
+        Set<String> names = new HashSet<String>();
+        if (StringUtils.isNotBlank(excludedDirectories)) {
+            for (String name : StringUtils.split(excludedDirectories, ',')) {
+                names.add(name);
+            }
+        }
+
+        return names;
+    }
+
+    /**
+     * @param fileName the name of the file of an attachment
+     * @return the file, <tt>null</tt> if there's none or several files with this name in the attachment directory
+     */
+    public File find(String fileName)
+    {
+        if (!this.scanned) {
+            scan();
+        }
+
+        File file = this.files.get(fileName);
+
+        return file != AMBIGUOUS ? file : null;
+    }
+
+    private synchronized void scan()
+    {
+        if (this.scanned) {
+            return;
+        }
+
+        File[] children = this.directory.listFiles();
+        if (children == null) {
+            this.logger.warn("Attachment directory " + this.directory + " can't be read.", false);
+        } else {
+            try {
+                scan(children);
+            } catch (Exception e) {
+                this.logger.error("Failed to scan the attachment directory " + this.directory + ": "
+                    + e.getMessage(), false);
+            }
+            this.logger.info("Indexed " + this.files.size() + " files of the attachment directory.", false);
+        }
+
+        // The lookups which don't wait for the scan must only see the complete index.
+        this.scanned = true;
+    }
+
+    private void scan(File[] children) throws Exception
+    {
+        int threads = MediaWikiWorkerPool.getDefaultThreads();
+        MediaWikiWorkerPool pool =
+            new MediaWikiWorkerPool(this.componentManager, "MediaWiki attachment scanner", threads, threads);
+        try {
+            for (final File child : children) {
+                if (child.isDirectory()) {
+                    if (!this.excludedDirectories.contains(child.getName())) {
+                        pool.submit(new Runnable()
+                        {
+                            public void run()
+                            {
+                                scan(child);
+                            }
+                        });
+                    }
+                } else {
+                    add(child);
+                }
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Walks a sub directory of the attachment directory.
+     */
+    private void scan(File root)
+    {
+        Stack<File> directories = new Stack<File>();
+        directories.push(root);
+        while (!directories.isEmpty()) {
+            File[] children = directories.pop().listFiles();
+            if (children == null) {
+                continue;
+            }
+            for (File child : children) {
+                if (child.isDirectory()) {
+                    if (!this.excludedDirectories.contains(child.getName())) {
+                        directories.push(child);
+                    }
+                } else {
+                    add(child);
+                }
+            }
+        }
+    }
+
+    private void add(File file)
+    {
+        if (this.files.putIfAbsent(file.getName(), file) != null) {
+            this.files.put(file.getName(), AMBIGUOUS);
+        }
+    }
+}
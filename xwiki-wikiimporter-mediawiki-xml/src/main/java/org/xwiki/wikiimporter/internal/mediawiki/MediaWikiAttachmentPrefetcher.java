@@ -0,0 +1,217 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.FileUtils;
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+
+/**
+ * Reads the files of the attachments in the background, as soon as the pages referencing them are read, so that their
+ * content is already in memory when the page is saved. The prefetched contents are held within a byte budget: the
+ * room for a file is reserved when its read is submitted, making room by dropping the oldest prefetched contents, and
+ * a file which doesn't fit is simply read when the page is saved. Contents never taken, by pages which fail to be
+ * saved or whose attachments are linked to another copy, are dropped the same way. It can be used from any thread.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiAttachmentPrefetcher
+{
+    /**
+     * The longest wait for a file being read between two checks of the workers, which skip the reads once one of them
+     * failed.
+     */
+    private static final long WAIT_INTERVAL = 1000;
+
+    private final MediaWikiWorkerPool pool;
+
+    private final long budget;
+
+    /**
+     * The prefetched contents, oldest first.
+     */
+    private final LinkedHashMap<File, byte[]> contents = new LinkedHashMap<File, byte[]>();
+
+    /**
+     * The files being read, with the room reserved for them.
+     */
+    private final Map<File, Long> pending = new HashMap<File, Long>();
+
+    /**
+     * The number of bytes reserved for the files being read.
+     */
+    private long reserved;
+
+    /**
+     * The number of bytes held by the prefetched contents.
+     */
+    private long held;
+
+    private long hits;
+
+    /**
+     * @param componentManager the component manager, used to create the reading workers
+     * @param threads the number of files read at the same time
+     * @param budget the maximum number of bytes held by the prefetched contents
+     * @throws ComponentLookupException if the worker components can't be found
+     */
+    public MediaWikiAttachmentPrefetcher(ComponentManager componentManager, int threads, long budget)
+        throws ComponentLookupException
+    {
+        this.pool = new MediaWikiWorkerPool(componentManager, "MediaWiki attachment prefetcher", threads, threads * 16);
+        this.budget = budget;
+    }
+
+    /**
+     * Starts reading a file, unless it's already read or there's no room for it.
+     * 
+     * @param file the file of an attachment
+     */
+    public void prefetch(final File file)
+    {
+        if (this.pool.hasFailed()) {
+            return;
+        }
+
+        long length = file.length();
+        synchronized (this) {
+            if (length == 0 || this.contents.containsKey(file) || this.pending.containsKey(file)
+                || !makeRoom(length)) {
+                return;
+            }
+            this.reserved += length;
+            this.pending.put(file, length);
+        }
+
+        // The reads are only an optimization: when the workers are late the file is read when the page is saved.
+        boolean submitted = this.pool.trySubmit(new Runnable()
+        {
+            public void run()
+            {
+                read(file);
+            }
+        });
+        if (!submitted) {
+            synchronized (this) {
+                this.pending.remove(file);
+                this.reserved -= length;
+            }
+        }
+    }
+
+    /**
+     * @param file the file of an attachment
+     * @return the content of the file, which is then released by the prefetcher, <tt>null</tt> if the file wasn't
+     *         prefetched
+     */
+    public synchronized byte[] take(File file)
+    {
+        // Wait for the file being read rather than reading it a second time. Once the workers failed, the files still
+        // pending are never read: they're read by the caller.
+        try {
+            while (this.pending.containsKey(file)) {
+                if (this.pool.hasFailed()) {
+                    return null;
+                }
+                wait(WAIT_INTERVAL);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+
+        byte[] content = this.contents.remove(file);
+        if (content != null) {
+            this.held -= content.length;
+            this.hits++;
+        }
+
+        return content;
+    }
+
+    /**
+     * @return the number of attachments whose content was prefetched
+     */
+    public synchronized long getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * Waits for the pending reads and drops the contents which weren't taken.
+     * 
+     * @throws MediaWikiImporterException if interrupted while waiting
+     */
+    public void shutdown() throws MediaWikiImporterException
+    {
+        this.pool.shutdown();
+        synchronized (this) {
+            this.contents.clear();
+            this.held = 0;
+        }
+    }
+
+    private void read(File file)
+    {
+        byte[] content = null;
+        try {
+            content = FileUtils.readFileToByteArray(file);
+        } catch (Throwable e) {
+            // Running out of memory included: the error, if any, is reported when the page is saved and the file is
+            // read again. A failed task would also stop the pool, leaving the following files pending forever.
+        } finally {
+            synchronized (this) {
+                this.reserved -= this.pending.remove(file);
+                // The file may have grown since its length was reserved.
+                if (content != null && makeRoom(content.length)) {
+                    this.contents.put(file, content);
+                    this.held += content.length;
+                }
+                notifyAll();
+            }
+        }
+    }
+
+    /**
+     * Drops the oldest prefetched contents until there's room for the given number of bytes.
+     * 
+     * @return <tt>false</tt> if there isn't enough room, the reads in progress included
+     */
+    private boolean makeRoom(long length)
+    {
+        if (this.reserved + length > this.budget) {
+            return false;
+        }
+
+        Iterator<byte[]> oldest = this.contents.values().iterator();
+        while (this.reserved + this.held + length > this.budget && oldest.hasNext()) {
+            this.held -= oldest.next().length;
+            oldest.remove();
+        }
+
+        return true;
+    }
+}
@@ -0,0 +1,217 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+
+/**
+ * Content addressed store of the attachments of an import. The first attachment whose content is actually stored
+ * becomes the owner of the content, the pages referencing the same content afterwards, under the same file name or
+ * not, link to the attachment of that page instead of storing a copy. Until a content is stored, the pages
+ * referencing it store their own copy, since the page expected to store it may fail to be saved, be skipped or be
+ * saved after them. The MD5 hash of each file is computed once and cached by path for as long as
+ * the file isn't modified. Both tables are bounded, the least recently used entries being evicted: a duplicate of an
+ * evicted content is simply stored again. It can be used from any thread.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiAttachmentStore
+{
+    /**
+     * The hash of a file, valid as long as the file isn't modified.
+     */
+    private static class FileHash
+    {
+        private final long lastModified;
+
+        private final long length;
+
+        private final String hash;
+
+        FileHash(long lastModified, long length, String hash)
+        {
+            this.lastModified = lastModified;
+            this.length = length;
+            this.hash = hash;
+        }
+    }
+
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final char[] HEX_DIGITS = "0123456789abcdef".toCharArray();
+
+    /**
+     * The hash of the files already read, by path.
+     */
+    private final Map<String, FileHash> hashes;
+
+    /**
+     * The reference of the attachment storing each content, by hash.
+     */
+    private final Map<String, String> owners;
+
+    private final WikiImporterLogger logger;
+
+    private long duplicates;
+
+    /**
+     * @param maxSize the maximum number of files and of contents remembered
+     * @param logger the import logger
+     */
+    public MediaWikiAttachmentStore(int maxSize, WikiImporterLogger logger)
+    {
+        this.hashes = createTable(maxSize);
+        this.owners = createTable(maxSize);
+        this.logger = logger;
+    }
+
+    /**
+     * @param file the file of an attachment
+     * @param attachmentReference the reference of the attachment, <tt>Space.Page@file name</tt>
+     * @return the reference of the attachment already storing the same content, <tt>null</tt> if the content has to be
+     *         stored by the given attachment
+     */
+    public String findOwner(File file, String attachmentReference)
+    {
+        String hash = getHash(file);
+        if (hash == null) {
+            return null;
+        }
+
+        synchronized (this.owners) {
+            String owner = this.owners.get(hash);
+            if (owner != null && !owner.equals(attachmentReference)) {
+                this.duplicates++;
+
+                return owner;
+            }
+        }
+
+        return null;
+    }
+
+    /**
+     * Records that the content of the file is stored by the given attachment, unless another one already stores it.
+     * 
+     * @param file the file of an attachment
+     * @param attachmentReference the reference of the attachment, <tt>Space.Page@file name</tt>
+     */
+    public void addOwner(File file, String attachmentReference)
+    {
+        String hash = getHash(file);
+        if (hash != null) {
+            synchronized (this.owners) {
+                if (!this.owners.containsKey(hash)) {
+                    this.owners.put(hash, attachmentReference);
+                }
+            }
+        }
+    }
+
+    /**
+     * @return the number of attachments linked to the copy stored by another attachment
+     */
+    public long getDuplicates()
+    {
+        synchronized (this.owners) {
+            return this.duplicates;
+        }
+    }
+
+    private String getHash(File file)
+    {
+        String path = file.getAbsolutePath();
+        long lastModified = file.lastModified();
+        long length = file.length();
+
+        FileHash fileHash;
+        synchronized (this.hashes) {
+            fileHash = this.hashes.get(path);
+        }
+        if (fileHash != null && fileHash.lastModified == lastModified && fileHash.length == length) {
+            return fileHash.hash;
+        }
+
+        // The file is read out of the lock, two threads may hash the same file the first time.
+        String hash;
+        try {
+            hash = hash(file);
+        } catch (IOException e) {
+            this.logger.warn("Failed to read the attachment file " + file + ": " + e.getMessage(), true);
+            return null;
+        }
+        synchronized (this.hashes) {
+            this.hashes.put(path, new FileHash(lastModified, length, hash));
+        }
+
+        return hash;
+    }
+
+    private static String hash(File file) throws IOException
+    {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IOException("MD5 isn't available");
+        }
+
+        InputStream stream = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[BUFFER_SIZE];
+            for (int read = stream.read(buffer); read >= 0; read = stream.read(buffer)) {
+                digest.update(buffer, 0, read);
+            }
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+
+        StringBuilder hash = new StringBuilder();
+        for (byte b : digest.digest()) {
+            hash.append(HEX_DIGITS[(b >> 4) & 0xf]).append(HEX_DIGITS[b & 0xf]);
+        }
+
+        return hash.toString();
+    }
+
+    private static <V> Map<String, V> createTable(final int maxSize)
+    {
+        return new LinkedHashMap<String, V>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, V> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+}
@@ -0,0 +1,299 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+import org.apache.commons.io.IOUtils;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+
+/**
+ * Durable journal of the pages committed by an import, used to resume an interrupted import.
+ * <p>
+ * Each committed page appends a line {@code watermark offset pageId revision} which is synced to the disk. The offset
+ * is the position of the page in the dump (the offset of its stream for multistream dumps) and the watermark is an
+ * offset before which all the pages are committed. Since pages can be committed out of order by the parallel import
+ * modes, resuming means reading the dump from the last watermark and skipping the pages already committed after it.
+ * The parallel modes also hold the start of each range or stream of the dump as in flight until it's completely
+ * read, since a range has no page in flight between the commit of a page and the beginning of the next one.
+ * <p>
+ * A page which fails to be saved appends a line {@code failed watermark offset pageId revision} instead: it's no longer
+ * in flight, so that a single failure doesn't hold the watermark for the rest of the import, and it's retried by its id
+ * when the import is resumed, until a later line commits it.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiCheckpointJournal
+{
+    private static final String UTF8 = "UTF-8";
+
+    private static final String SEPARATOR = " ";
+
+    private static final String FAILED = "failed";
+
+    private final FileOutputStream output;
+
+    private long resumeOffset = -1;
+
+    /**
+     * Pages committed after the resume offset, to be skipped.
+     */
+    private Set<String> committedPages = new HashSet<String>();
+
+    /**
+     * Offsets of the pages which failed to be saved and haven't been committed since, by page id.
+     */
+    private Map<String, Long> failedPages = new HashMap<String, Long>();
+
+    /**
+     * Offsets of the pages being imported, by page id.
+     */
+    private final Map<String, Long> inFlightPages = new HashMap<String, Long>();
+
+    /**
+     * Number of pages being imported by offset.
+     */
+    private final TreeMap<Long, Integer> inFlightOffsets = new TreeMap<Long, Integer>();
+
+    private long watermark = -1;
+
+    /**
+     * @param file the journal file
+     * @param resume <tt>true</tt> to load the existing journal and resume from it, <tt>false</tt> to start a new one
+     * @throws IOException if the journal can't be read or created
+     */
+    public MediaWikiCheckpointJournal(File file, boolean resume) throws IOException
+    {
+        if (resume && file.exists()) {
+            load(file);
+            this.watermark = this.resumeOffset;
+        }
+
+        this.output = new FileOutputStream(file, resume);
+    }
+
+    private void load(File file) throws IOException
+    {
+        // Committed pages by offset, only the ones after the current watermark are kept.
+        TreeMap<Long, List<String>> pages = new TreeMap<Long, List<String>>();
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+        try {
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                String[] fields = line.split(SEPARATOR);
+                boolean failed = FAILED.equals(fields[0]);
+                int first = failed ? 1 : 0;
+                if (fields.length < first + 4) {
+                    // Line truncated by a crash: the revision follows the page id, so the id is complete.
+                    continue;
+                }
+
+                try {
+                    long lineWatermark = Long.parseLong(fields[first]);
+                    long offset = Long.parseLong(fields[first + 1]);
+                    String pageId = fields[first + 2];
+
+                    if (failed) {
+                        this.failedPages.put(pageId, offset);
+                    } else {
+                        this.failedPages.remove(pageId);
+
+                        List<String> offsetPages = pages.get(offset);
+                        if (offsetPages == null) {
+                            offsetPages = new ArrayList<String>();
+                            pages.put(offset, offsetPages);
+                        }
+                        offsetPages.add(pageId);
+                    }
+
+                    if (lineWatermark > this.resumeOffset) {
+                        this.resumeOffset = lineWatermark;
+                        pages.headMap(lineWatermark).clear();
+                    }
+                } catch (NumberFormatException e) {
+                    // Line truncated by a crash.
+                }
+            }
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+
+        for (List<String> offsetPages : pages.values()) {
+            this.committedPages.addAll(offsetPages);
+        }
+    }
+
+    /**
+     * @return the offset from which to read the dump to resume the import, -1 to read the whole dump
+     */
+    public long getResumeOffset()
+    {
+        return this.resumeOffset;
+    }
+
+    /**
+     * @return the offsets of the pages which failed to be saved by the import being resumed and are before the resume
+     *         offset, by page id, so that they're retried
+     */
+    public synchronized Map<String, Long> getFailedPages()
+    {
+        Map<String, Long> pages = new HashMap<String, Long>();
+        for (Map.Entry<String, Long> page : this.failedPages.entrySet()) {
+            if (page.getValue() < this.resumeOffset) {
+                pages.put(page.getKey(), page.getValue());
+            }
+        }
+
+        return pages;
+    }
+
+    /**
+     * @param pageId the id of a page
+     * @return <tt>true</tt> if the page has already been committed by the import being resumed
+     */
+    public synchronized boolean isCommitted(String pageId)
+    {
+        return this.committedPages.contains(pageId);
+    }
+
+    /**
+     * Called when a page is read from the dump, before it's imported.
+     * 
+     * @param pageId the id of the page
+     * @param offset the offset of the page in the dump
+     */
+    public synchronized void begin(String pageId, long offset)
+    {
+        if (pageId == null || offset < 0) {
+            return;
+        }
+
+        this.inFlightPages.put(pageId, offset);
+        addInFlight(offset);
+    }
+
+    /**
+     * Called before a range or a stream of the dump is handed to a worker, so that the watermark doesn't move past it
+     * until it's completely read. The ranges must be begun in the order of their offsets, before any later range is
+     * started.
+     * 
+     * @param offset the offset of the range in the dump
+     */
+    public synchronized void beginRange(long offset)
+    {
+        if (offset >= 0) {
+            addInFlight(offset);
+        }
+    }
+
+    /**
+     * Called once all the pages of a range or a stream of the dump have been read and committed.
+     * 
+     * @param offset the offset of the range in the dump
+     */
+    public synchronized void endRange(long offset)
+    {
+        if (offset >= 0) {
+            removeInFlight(offset);
+        }
+    }
+
+    /**
+     * Called once the page has been imported, records it durably.
+     * 
+     * @param page the imported page
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized void commit(MediaWikiPage page) throws IOException
+    {
+        end(page, "");
+    }
+
+    /**
+     * Called when the page failed to be saved, records it durably so that it's retried when the import is resumed,
+     * without holding the watermark.
+     * 
+     * @param page the page which failed to be saved
+     * @throws IOException if the journal can't be written
+     */
+    public synchronized void fail(MediaWikiPage page) throws IOException
+    {
+        end(page, FAILED + SEPARATOR);
+    }
+
+    private void end(MediaWikiPage page, String prefix) throws IOException
+    {
+        Long offset = page.getId() != null ? this.inFlightPages.remove(page.getId()) : null;
+        if (offset == null) {
+            return;
+        }
+
+        removeInFlight(offset);
+
+        // Everything before the first page still being imported is committed or recorded as failed.
+        long newWatermark = this.inFlightOffsets.isEmpty() ? offset : this.inFlightOffsets.firstKey();
+        this.watermark = Math.max(this.watermark, newWatermark);
+
+        String revision = page.getLastRevision().getVersion();
+        String line =
+            prefix + this.watermark + SEPARATOR + offset + SEPARATOR + page.getId() + SEPARATOR + revision + "\n";
+        this.output.write(line.getBytes(UTF8));
+        this.output.getChannel().force(false);
+    }
+
+    private void addInFlight(long offset)
+    {
+        Integer count = this.inFlightOffsets.get(offset);
+        this.inFlightOffsets.put(offset, count != null ? count + 1 : 1);
+    }
+
+    private void removeInFlight(long offset)
+    {
+        Integer count = this.inFlightOffsets.get(offset);
+        if (count == null) {
+            return;
+        }
+        if (count > 1) {
+            this.inFlightOffsets.put(offset, count - 1);
+        } else {
+            this.inFlightOffsets.remove(offset);
+        }
+    }
+
+    /**
+     * Closes the journal.
+     */
+    public void close()
+    {
+        IOUtils.closeQuietly(this.output);
+    }
+}
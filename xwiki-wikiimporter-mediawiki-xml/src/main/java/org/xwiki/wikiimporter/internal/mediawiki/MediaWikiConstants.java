@@ -34,8 +34,27 @@ public class MediaWikiConstants
 
     public final static String PAGE_TITLE_TAG = "title";
 
+    public final static String NAMESPACE_TAG = "ns";
+
+    /**
+     * The property holding the prefix of the namespace of a page, as declared in the siteinfo of the dump.
+     */
+    public final static String NAMESPACE_PREFIX_PROPERTY = "namespace";
+
+    public final static String SITEINFO_TAG = "siteinfo";
+
+    public final static String NAMESPACE_DECLARATION_TAG = "namespace";
+
+    public final static String NAMESPACE_KEY_ATTRIBUTE = "key";
+
+    public final static String REDIRECT_TAG = "redirect";
+
+    public final static String REDIRECT_TITLE_ATTRIBUTE = "title";
+
     public final static String PAGE_REVISION_TAG = "revision";
 
+    public final static String CONTRIBUTOR_TAG = "contributor";
+
     public final static String AUTHOR_TAG = "username";
 
     public final static String TIMESTAMP_TAG = "timestamp";
@@ -48,16 +67,36 @@ public class MediaWikiConstants
 
     public final static String TEXT_CONTENT_TAG = "text";
 
+    /**
+     * A file uploaded to the page, exported with <tt>--uploads</tt>.
+     */
+    public final static String UPLOAD_TAG = "upload";
+
+    public final static String UPLOAD_FILENAME_TAG = "filename";
+
+    public final static String UPLOAD_CONTENTS_TAG = "contents";
+
+    public final static String ENCODING_ATTRIBUTE = "encoding";
+
+    public final static String BASE64_ENCODING = "base64";
+
     public final static List<String> MW_PROPERTIES = new ArrayList<String>(Arrays.asList(PAGE_TITLE_TAG, AUTHOR_TAG,
         COMMENT_TAG, IS_MINOR_TAG, TIMESTAMP_TAG, VERSION_TAG));
 
     public static String convertPageName(String mediaWikiPageName)
     {
-        String xwikiPageName = mediaWikiPageName.replaceAll("[.:\\\\]", "");
+        // Remove the characters XWiki uses as separators: '.', ':' and '\\'.
+        StringBuilder xwikiPageName = new StringBuilder(mediaWikiPageName.length());
+        for (int i = 0; i < mediaWikiPageName.length(); ++i) {
+            char c = mediaWikiPageName.charAt(i);
+            if (c != '.' && c != ':' && c != '\\') {
+                xwikiPageName.append(c);
+            }
+        }
 
         // In MediaWiki the first character can have any case
-        xwikiPageName = xwikiPageName.substring(0, 1).toUpperCase() + xwikiPageName.substring(1);
+        xwikiPageName.setCharAt(0, Character.toUpperCase(xwikiPageName.charAt(0)));
 
-        return xwikiPageName;
+        return xwikiPageName.toString();
     }
 }
@@ -0,0 +1,432 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Stack;
+
+import org.apache.commons.lang.StringUtils;
+import org.xwiki.rendering.listener.Listener;
+import org.xwiki.rendering.listener.WrappingListener;
+import org.xwiki.rendering.listener.reference.DocumentResourceReference;
+import org.xwiki.rendering.listener.reference.ResourceReference;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiTitleIndex;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiAttachment;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPageRevision;
+
+/**
+ * Converts the rendering events of the MediaWiki content of a revision into XWiki ones: links are converted to XWiki
+ * references, categories to tags, images and media links to attachments of the page and unknown macros to warnings.
+ * The converted events are forwarded to an XDOM builder or a streaming renderer. A new converter is used for each
+ * parsing.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiContentConverter extends WrappingListener
+{
+    private MediaWikiImportParameters params;
+
+    private WikiImporterLogger logger;
+
+    private MediaWikiPage page;
+
+    private MediaWikiPageRevision revision;
+
+    private MediaWikiReferenceCache referenceCache;
+
+    /**
+     * The titles of the imported pages, <tt>null</tt> if the links are converted without knowing them.
+     */
+    private MediaWikiTitleIndex titleIndex;
+
+    private MediaWikiImportIndexes indexes;
+
+    /**
+     * The contents of the attachments already stored, <tt>null</tt> if the attachments aren't deduplicated.
+     */
+    private MediaWikiAttachmentStore attachmentStore;
+
+    private MediaWikiMacroMapping macroMapping;
+
+    /**
+     * The converted references of the links being converted, so that the end of a link gets the same reference as its
+     * beginning without converting it again.
+     */
+    private Stack<ResourceReference> links = new Stack<ResourceReference>();
+
+    private int macroErrors;
+
+    private int missingLinks;
+
+    /**
+     * @param params the import parameters
+     * @param logger the import logger
+     * @param page the page receiving the attachments found in the content
+     * @param revision the revision receiving the tags found in the content
+     * @param referenceCache the cache of the converted link references, shared by all the parsings of the import
+     * @param indexes the indexes of the import: the titles of the imported pages, to resolve the links, the files of
+     *            the attachment directory and the contents of the attachments already stored
+     * @param macroMapping the XWiki macros the MediaWiki templates are converted to
+     * @param listener the listener receiving the converted events, a {@link MediaWikiXDOMBuilder} or a streaming
+     *            renderer
+     */
+    public MediaWikiContentConverter(MediaWikiImportParameters params, WikiImporterLogger logger, MediaWikiPage page,
+        MediaWikiPageRevision revision, MediaWikiReferenceCache referenceCache, MediaWikiImportIndexes indexes,
+        MediaWikiMacroMapping macroMapping, Listener listener)
+    {
+        this.params = params;
+        this.logger = logger;
+        this.page = page;
+        this.revision = revision;
+        this.referenceCache = referenceCache;
+        this.titleIndex = indexes.getTitleIndex();
+        this.indexes = indexes;
+        this.attachmentStore = indexes.getAttachmentStore();
+        this.macroMapping = macroMapping;
+
+        setWrappedListener(listener);
+    }
+
+    /**
+     * @return the number of unmapped macros replaced by warnings
+     */
+    public int getMacroErrors()
+    {
+        return this.macroErrors;
+    }
+
+    /**
+     * @return the number of links to pages which aren't imported, always 0 when there's no title index
+     */
+    public int getMissingLinks()
+    {
+        return this.missingLinks;
+    }
+
+    /**
+     * @param attachmentName the name of an attachment referenced by the content
+     * @return the reference of the attachment of another page storing the same content, <tt>null</tt> if the
+     *         attachment is added to the page
+     */
+    private String addAttachment(String attachmentName)
+    {
+        MediaWikiAttachment attachment =
+            new MediaWikiAttachment(this.params.getAttachmentSrcPath(), attachmentName, this.params
+                .getAttachmentExcludeDirs(), this.indexes, this.logger);
+
+        // The Category pages aren't imported, they can't store the attachments of the other pages.
+        String space = getSpace(this.page);
+        if (this.attachmentStore != null && !"Category".equalsIgnoreCase(space)) {
+            File file = attachment.getFile();
+            if (file != null) {
+                String reference = space + "." + this.page.getName() + "@" + attachmentName;
+                String owner = this.attachmentStore.findOwner(file, reference);
+                if (owner != null) {
+                    return owner;
+                }
+                // The attachment owns the content once it's stored.
+                attachment.setStoreReference(reference);
+            }
+        }
+
+        this.page.addAttachment(attachment);
+
+        return null;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.rendering.listener.WrappingListener#beginLink(org.xwiki.rendering.listener.reference.ResourceReference,
+     *      boolean, java.util.Map)
+     */
+    public void beginLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        String linkReference = reference.getReference();
+        // Convert Categories to Tags.
+        if (linkReference.startsWith("Category")) {
+            String[] refData = linkReference.split(":");
+            if (refData.length>1)
+             this.revision.addTag(refData[1]);
+            return;
+        }
+
+        if (linkReference.contains("::")) {
+            // we don't know how to treat these links
+            return;
+        }
+
+        // Convert from MediaWiki link to XWiki link
+        reference = converReference(reference);
+        this.links.push(reference);
+
+        super.beginLink(reference, isFreeStandingURI, parameters);
+    }
+
+
+    public void onImage(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        ResourceReference xwikiLink =
+            new ResourceReference(reference.getReference(), reference.getType());
+        String resourceName = reference.getReference();
+        resourceName = resourceName.replaceAll(" ", "_");
+        String owner = addAttachment(resourceName);
+        xwikiLink.setReference("image:" + (owner != null ? owner : resourceName));
+
+        super.onImage(xwikiLink, isFreeStandingURI, parameters);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.rendering.listener.WrappingListener#endLink(org.xwiki.rendering.listener.reference.ResourceReference,
+     *      boolean, java.util.Map)
+     */
+    public void endLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
+    {
+        String linkReference = reference.getReference();
+
+        // Convert Categories to Tags.
+        if (linkReference.startsWith("Category")||linkReference.contains("::")) {
+            return;
+        }
+
+        // Same XWiki link as the beginning of the link
+        reference = this.links.pop();
+
+        super.endLink(reference, isFreeStandingURI, parameters);
+    }
+
+    /**
+     * Convert from MediaWiki reference to XWiki reference. The conversion is taken from the reference cache when the
+     * same reference has already been converted.
+     */
+    private ResourceReference converReference(ResourceReference mediaWikiReference)
+    {
+        String rawReference = mediaWikiReference.getReference();
+        MediaWikiReferenceCache.Entry conversion = this.referenceCache.get(rawReference);
+        if (conversion == null) {
+            conversion = convertReference(rawReference);
+            this.referenceCache.put(rawReference, conversion);
+        }
+
+        String reference = conversion.getReference();
+        if (conversion.getAttachmentName() != null) {
+            String owner = addAttachment(conversion.getAttachmentName());
+            if (owner != null) {
+                // Link to the copy stored by another page, keeping the image: or attach: prefix.
+                reference = reference.substring(0, reference.indexOf(':') + 1) + owner;
+            }
+        }
+        if (conversion.isMissingPage()) {
+            this.missingLinks++;
+        }
+
+        if (reference == null) {
+            return mediaWikiReference;
+        }
+
+        ResourceReference xwikiLink = new ResourceReference(reference, mediaWikiReference.getType());
+        xwikiLink.setParameters(mediaWikiReference.getParameters());
+        if (conversion.getQueryString() != null) {
+            xwikiLink.setParameter(DocumentResourceReference.QUERY_STRING, conversion.getQueryString());
+        }
+
+        return xwikiLink;
+    }
+
+    /**
+     * Convert from MediaWiki reference to XWiki reference.
+     * 
+     * @param mediaWikiReference the raw MediaWiki reference
+     * @return the conversion of the reference, holding a <tt>null</tt> reference if the MediaWiki one is kept as is
+     */
+    private MediaWikiReferenceCache.Entry convertReference(String mediaWikiReference)
+    {
+        try {
+            // If link reference is a external url
+            if (-1 != mediaWikiReference.indexOf("://")) {
+                return new MediaWikiReferenceCache.Entry(null, null, null, false);
+            }
+
+            // if link reference is an email
+            if (mediaWikiReference.startsWith("mailto:")) {
+                return new MediaWikiReferenceCache.Entry(null, null, null, false);
+            }
+
+            String reference = mediaWikiReference;
+            String queryString = null;
+            String attachmentName = null;
+
+            // Handle Colon (:) - Links like [[Space:Page]]
+            if (reference.contains(":") && !reference.endsWith(":")) {
+                String[] parts = reference.split(":");
+                String nameSpace = parts[0];
+                if (StringUtils.isNotEmpty(this.params.getTargetSpace())) {
+                    nameSpace = this.params.getTargetSpace();
+                }
+                String resourceName = parts[1];
+
+                if (isImage(nameSpace, resourceName)) {
+                    reference = "image:" + resourceName;
+                    attachmentName = resourceName;
+
+                } else if (nameSpace.equalsIgnoreCase("media") || nameSpace.equalsIgnoreCase("file")) {
+                    reference = "attach:" + resourceName;
+                    attachmentName = resourceName;
+
+                } else if (-1 != resourceName.indexOf('/')) {
+                    reference = nameSpace + "."
+                        + MediaWikiConstants.convertPageName(resourceName.substring(resourceName.lastIndexOf('/') + 1));
+                } else {
+                    reference = nameSpace + "." + MediaWikiConstants.convertPageName(resourceName);
+                }
+            } else if (StringUtils.isNotEmpty(reference)) {
+                // If linkreference is not referred to a space, set the default space as Main.
+                reference = getDefaultSpace() + "." + MediaWikiConstants.convertPageName(reference);
+            }
+
+            // Resolve the links to pages against the titles of the imported pages.
+            boolean missingPage = false;
+            if (this.titleIndex != null && attachmentName == null && StringUtils.isNotEmpty(reference)) {
+                String title = this.titleIndex.find(mediaWikiReference);
+                if (title != null) {
+                    return new MediaWikiReferenceCache.Entry(getPageReference(title), null, null, false);
+                }
+                missingPage = true;
+            }
+
+            // Fix Category Link [[:Category:Help|HELP]]
+            if (reference.startsWith(":Category:") || reference.startsWith(":category:")) {
+                String categoryReference = reference.substring(":Category:".length()).trim();
+                if (!"".equals(categoryReference)) {
+                    reference = "Main.Tags";
+                    queryString = "do=viewTag&tag=" + categoryReference;
+                }
+            }
+
+            // Handle hierarchy ('/')
+            if (-1 != reference.indexOf('/')) {
+                reference = getDefaultSpace() + "."
+                    + MediaWikiConstants.convertPageName(reference.substring(reference.lastIndexOf('/') + 1));
+            }
+
+
+            return new MediaWikiReferenceCache.Entry(reference, queryString, attachmentName, missingPage);
+        } catch (Exception e) {
+            this.logger.warn("Failed to convert the link [" + mediaWikiReference + "], it's kept as is: "
+                + e.getMessage(), true);
+            return new MediaWikiReferenceCache.Entry(null, null, null, false);
+        }
+    }
+
+    /**
+     * @param title the title of an imported page
+     * @return the reference of the XWiki page the MediaWiki page is imported into, following the same rules as the
+     *         import of the page itself
+     */
+    private String getPageReference(String title)
+    {
+        MediaWikiDumpPage dumpPage = new MediaWikiDumpPage();
+        dumpPage.setTitle(title);
+        this.titleIndex.getNamespaces().resolve(dumpPage);
+
+        MediaWikiPageRevision titleRevision = new MediaWikiPageRevision();
+        titleRevision.setTitle(title);
+        MediaWikiPage titlePage = new MediaWikiPage(this.params.getDefaultSpace());
+        titlePage.setNamespacePrefix(dumpPage.getNamespacePrefix());
+        titlePage.addRevision(titleRevision);
+
+        return getSpace(titlePage) + "." + titlePage.getName();
+    }
+
+    /**
+     * @param page an imported page
+     * @return the space the page is imported into, following the same rules as the import of the page itself
+     */
+    private String getSpace(MediaWikiPage page)
+    {
+        String space = page.getSpace();
+        if (StringUtils.isNotEmpty(this.params.getTargetSpace())) {
+            space = this.params.getTargetSpace();
+        } else if (StringUtils.isEmpty(space)) {
+            space = "Main";
+        }
+
+        return space;
+    }
+
+    /**
+     * Check if the file is a image.
+     * 
+     * @param nameSpace Namespace of the file.Images usually have File or Image and namespace.
+     * @param fileName name of the file with extension
+     * @return
+     */
+    private boolean isImage(String nameSpace, String fileName)
+    {
+        if (nameSpace.equalsIgnoreCase("image"))
+            return true;
+
+        int dotIndex = fileName.indexOf('.');
+        String[] fileExtensions = {"png", "gif", "jpg", "jpeg", "svg", "tiff", "tif"};
+        if ((nameSpace.equalsIgnoreCase("image") || nameSpace.equalsIgnoreCase("file")) && -1 != dotIndex) {
+            String fileExtension = fileName.substring(dotIndex + 1).toLowerCase();
+            return Arrays.asList(fileExtensions).contains(fileExtension);
+        }
+
+        return false;
+    }
+
+    /**
+     * @return the default space.
+     */
+    private String getDefaultSpace()
+    {
+        if (StringUtils.isNotBlank(this.params.getTargetSpace())) {
+            return this.params.getTargetSpace();
+        } else if (StringUtils.isNotBlank(this.params.getDefaultSpace())) {
+            return this.params.getDefaultSpace();
+        }
+
+        return "Main";
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.rendering.listener.Listener#onMacro(java.lang.String, java.util.Map, java.lang.String, boolean)
+     */
+    public void onMacro(String id, Map<String, String> macroParameters, String content, boolean isInline)
+    {
+        MediaWikiMacroMapping.Macro macro = this.macroMapping.getMacro(id);
+        if (macro != null) {
+            super.onMacro(macro.getId(), macro.convertParameters(macroParameters), content, isInline);
+        } else {
+            this.macroErrors++;
+            super.onMacro("warning", macroParameters, content, isInline);
+        }
+    }
+}
@@ -0,0 +1,208 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.io.StringReader;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.parser.StreamParser;
+import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPageRevision;
+
+/**
+ * Parses the MediaWiki content of a revision into an XWiki XDOM through a {@link MediaWikiContentConverter}, or
+ * straight into XWiki 2.0 syntax when streaming rendering is enabled. It keeps no state between two parsings but the
+ * cache of the converted link references, so it can be shared by the revisions of all the pages and used from any
+ * thread.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiContentParser
+{
+    /**
+     * The maximum number of converted link references kept in the cache.
+     */
+    private static final int REFERENCE_CACHE_SIZE = 10000;
+
+    private StreamParser mediawikiParser;
+
+    private WikiImporterLogger logger;
+
+    private MediaWikiImportParameters params;
+
+    /**
+     * The most used link targets, like the main page or popular templates, are converted only once.
+     */
+    private MediaWikiReferenceCache referenceCache = new MediaWikiReferenceCache(REFERENCE_CACHE_SIZE);
+
+    /**
+     * The indexes of the import, none until the listener sets them.
+     */
+    private MediaWikiImportIndexes indexes = new MediaWikiImportIndexes();
+
+    /**
+     * The XWiki macros the MediaWiki templates are converted to, loaded once for all the parsers.
+     */
+    private MediaWikiMacroMapping macroMapping;
+
+    /**
+     * Creates the XWiki 2.0 streaming renderers, <tt>null</tt> when streaming rendering is disabled.
+     */
+    private PrintRendererFactory rendererFactory;
+
+    /**
+     * The XDOM builder of each thread, reset and reused for each parsing.
+     */
+    private ThreadLocal<MediaWikiXDOMBuilder> builders = new ThreadLocal<MediaWikiXDOMBuilder>()
+    {
+        @Override
+        protected MediaWikiXDOMBuilder initialValue()
+        {
+            return new MediaWikiXDOMBuilder();
+        }
+    };
+
+    /**
+     * @param componentManager the component manager
+     * @param params the import parameters
+     * @throws ComponentLookupException if the MediaWiki parser can't be found
+     */
+    public MediaWikiContentParser(ComponentManager componentManager, MediaWikiImportParameters params)
+        throws ComponentLookupException
+    {
+        this.mediawikiParser = componentManager.lookup(StreamParser.class, "mediawiki/1.0");
+        this.logger = componentManager.lookup(WikiImporterLogger.class);
+        this.params = params;
+        try {
+            this.macroMapping = MediaWikiMacroMapping.getMapping(params.getMacroMappingPath());
+        } catch (MediaWikiImporterException e) {
+            // The mapping is checked before the import starts.
+            this.logger.error(e.getMessage(), false);
+            this.macroMapping = new MediaWikiMacroMapping();
+        }
+        if (params.getStreamingRendering()) {
+            this.rendererFactory = componentManager.lookup(PrintRendererFactory.class, "xwiki/2.0");
+        }
+    }
+
+    /**
+     * @param indexes the indexes shared by the listeners of the import
+     */
+    public void setIndexes(MediaWikiImportIndexes indexes)
+    {
+        this.indexes = indexes;
+    }
+
+    /**
+     * @return <tt>true</tt> if the content is converted straight into XWiki 2.0 syntax, without building an XDOM
+     */
+    public boolean isStreamingRendering()
+    {
+        return this.rendererFactory != null;
+    }
+
+    /**
+     * Logs how many link references have been converted and how many have been taken from the cache.
+     */
+    public void logStatistics()
+    {
+        this.logger.info("Link references converted: " + this.referenceCache.getMisses() + ", taken from the cache: "
+            + this.referenceCache.getHits() + ".", false);
+    }
+
+    /**
+     * Parses the original content of the revision. The tags found in the content are added to the revision and the
+     * attachments to the page.
+     * 
+     * @param page the page of the revision
+     * @param revision the revision to parse
+     * @return the XDOM of the revision, <tt>null</tt> if the content can't be parsed
+     */
+    public XDOM parse(MediaWikiPage page, MediaWikiPageRevision revision)
+    {
+        String content = revision.getOriginalContent() != null ? revision.getOriginalContent() : "";
+        MediaWikiXDOMBuilder builder = this.builders.get();
+        builder.reset();
+        MediaWikiContentConverter converter =
+            new MediaWikiContentConverter(this.params, this.logger, page, revision, this.referenceCache,
+                this.indexes, this.macroMapping, builder);
+        try {
+            this.mediawikiParser.parse(new StringReader(content), converter);
+        } catch (Exception e) {
+            this.logger.error("Failed to parse MediaWiki content of revision " + revision.getVersion() + ": "
+                + e.getMessage(), true);
+
+            return null;
+        }
+
+        logErrors(converter);
+
+        XDOM xdom = builder.getXDOM();
+        // Don't keep the blocks of the last parsing alive until the next one.
+        builder.reset();
+
+        return xdom;
+    }
+
+    /**
+     * Converts the original content of the revision straight into XWiki 2.0 syntax: the converted events are forwarded
+     * to a streaming renderer as they're parsed, so no XDOM is built. The tags found in the content are added to the
+     * revision and the attachments to the page.
+     * 
+     * @param page the page of the revision
+     * @param revision the revision to convert
+     * @return the content of the revision in XWiki 2.0 syntax, <tt>null</tt> if the content can't be converted
+     */
+    public String render(MediaWikiPage page, MediaWikiPageRevision revision)
+    {
+        String content = revision.getOriginalContent() != null ? revision.getOriginalContent() : "";
+        DefaultWikiPrinter printer = new DefaultWikiPrinter();
+        MediaWikiContentConverter converter =
+            new MediaWikiContentConverter(this.params, this.logger, page, revision, this.referenceCache,
+                this.indexes, this.macroMapping, this.rendererFactory.createRenderer(printer));
+        try {
+            this.mediawikiParser.parse(new StringReader(content), converter);
+        } catch (Exception e) {
+            this.logger.error("Failed to convert MediaWiki content of revision " + revision.getVersion() + ": "
+                + e.getMessage(), true);
+
+            return null;
+        }
+
+        logErrors(converter);
+
+        return printer.toString();
+    }
+
+    private void logErrors(MediaWikiContentConverter converter)
+    {
+        if (converter.getMacroErrors() > 0) {
+            this.logger.warn("Total Macro Errors reported on this page :" + converter.getMacroErrors(), true);
+        }
+        if (converter.getMissingLinks() > 0) {
+            this.logger.warn("Links to pages missing from the dump on this page: " + converter.getMissingLinks(), true);
+        }
+    }
+}
@@ -0,0 +1,102 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiTitleIndex;
+
+/**
+ * The indexes built once per import and shared by all its listeners, whatever the import mode.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiImportIndexes
+{
+    private MediaWikiTitleIndex titleIndex;
+
+    private MediaWikiAttachmentIndex attachmentIndex;
+
+    private MediaWikiAttachmentStore attachmentStore;
+
+    private MediaWikiAttachmentPrefetcher attachmentPrefetcher;
+
+    /**
+     * @return the titles of the imported pages, <tt>null</tt> if the links are converted without knowing them
+     */
+    public MediaWikiTitleIndex getTitleIndex()
+    {
+        return this.titleIndex;
+    }
+
+    /**
+     * @param titleIndex the titles of the imported pages
+     */
+    public void setTitleIndex(MediaWikiTitleIndex titleIndex)
+    {
+        this.titleIndex = titleIndex;
+    }
+
+    /**
+     * @return the files of the attachment directory, <tt>null</tt> if there's no attachment directory
+     */
+    public MediaWikiAttachmentIndex getAttachmentIndex()
+    {
+        return this.attachmentIndex;
+    }
+
+    /**
+     * @param attachmentIndex the files of the attachment directory
+     */
+    public void setAttachmentIndex(MediaWikiAttachmentIndex attachmentIndex)
+    {
+        this.attachmentIndex = attachmentIndex;
+    }
+
+    /**
+     * @return the contents of the attachments already stored, <tt>null</tt> if the attachments aren't deduplicated
+     */
+    public MediaWikiAttachmentStore getAttachmentStore()
+    {
+        return this.attachmentStore;
+    }
+
+    /**
+     * @param attachmentStore the contents of the attachments already stored
+     */
+    public void setAttachmentStore(MediaWikiAttachmentStore attachmentStore)
+    {
+        this.attachmentStore = attachmentStore;
+    }
+
+    /**
+     * @return the reader of the attachment files, <tt>null</tt> if the attachments aren't prefetched
+     */
+    public MediaWikiAttachmentPrefetcher getAttachmentPrefetcher()
+    {
+        return this.attachmentPrefetcher;
+    }
+
+    /**
+     * @param attachmentPrefetcher the reader of the attachment files
+     */
+    public void setAttachmentPrefetcher(MediaWikiAttachmentPrefetcher attachmentPrefetcher)
+    {
+        this.attachmentPrefetcher = attachmentPrefetcher;
+    }
+}
@@ -41,11 +41,55 @@ public class MediaWikiImportParameters extends WikiImportParameters
 
     private String allowedImageExtensions;
 
+    private boolean useSaxParser;
+
+    private String multistreamIndexPath;
+
+    private int workerThreads;
+
+    private boolean splitDump;
+
+    private boolean pipeline;
+
+    private int parseThreads;
+
+    private int renderThreads;
+
+    private int saveThreads;
+
+    private String checkpointPath;
+
+    private boolean resume;
+
+    private boolean streamingRendering;
+
+    private String excludedNamespaces;
+
+    private String titleFilter;
+
+    private String pageIdRange;
+
+    private boolean titleIndex;
+
+    private boolean skipRedirects;
+
+    private String macroMappingPath;
+
+    private boolean deduplicateAttachments;
+
+    private int attachmentPrefetchBudget;
+
+    private boolean writeBehind;
+
+    private int writeQueuePages;
+
+    private int writeQueueMegabytes;
+
     /**
-     * @param srcPath absolute path of the exported xml file.
+     * @param srcPath absolute path of the exported xml file, possibly compressed with bzip2, gzip or xz.
      */
     @PropertyName("Source Path")
-    @PropertyDescription("Absolute Path to Exported XML file")
+    @PropertyDescription("Absolute Path to Exported XML file (.xml, .bz2, .gz or .xz)")
     @PropertyMandatory
     public void setSrcPath(String srcPath)
     {
@@ -132,4 +176,410 @@ public class MediaWikiImportParameters extends WikiImportParameters
     {
         this.allowedImageExtensions = allowedImageExtensions;
     }
+
+    /**
+     * @return <tt>true</tt> if the dump should be parsed with the SAX handler instead of the pull reader
+     */
+    public boolean getUseSaxParser()
+    {
+        return useSaxParser;
+    }
+
+    /**
+     * @param useSaxParser <tt>true</tt> to parse the dump with the SAX handler instead of the pull reader
+     */
+    @PropertyName("Use SAX parser")
+    @PropertyDescription("Select true to parse the dump with the legacy SAX parser instead of the StAX reader")
+    public void setUseSaxParser(boolean useSaxParser)
+    {
+        this.useSaxParser = useSaxParser;
+    }
+
+    /**
+     * @return the multistreamIndexPath
+     */
+    public String getMultistreamIndexPath()
+    {
+        return multistreamIndexPath;
+    }
+
+    /**
+     * @param multistreamIndexPath absolute path to the index of a multistream bzip2 dump, enables the parallel import
+     *            of the streams of the dump
+     */
+    @PropertyName("Multistream Index Path")
+    @PropertyDescription("Absolute Path to the index file of a multistream bz2 dump, to import its streams in parallel")
+    public void setMultistreamIndexPath(String multistreamIndexPath)
+    {
+        this.multistreamIndexPath = multistreamIndexPath;
+    }
+
+    /**
+     * @return the number of threads used by the parallel import modes, 0 meaning the number of processors
+     */
+    public int getWorkerThreads()
+    {
+        return workerThreads;
+    }
+
+    /**
+     * @param workerThreads the number of threads used by the parallel import modes, 0 meaning the number of processors
+     */
+    @PropertyName("Worker Threads")
+    @PropertyDescription("Number of threads used by the parallel import modes (0 for the number of processors)")
+    public void setWorkerThreads(int workerThreads)
+    {
+        this.workerThreads = workerThreads;
+    }
+
+    /**
+     * @return <tt>true</tt> if the pages are parsed, rendered and saved by separate pools of threads
+     */
+    public boolean getPipeline()
+    {
+        return pipeline;
+    }
+
+    /**
+     * @param pipeline <tt>true</tt> to parse, render and save the pages on separate pools of threads
+     */
+    @PropertyName("Pipeline")
+    @PropertyDescription("Select true to parse, render and save the pages on separate pools of threads")
+    public void setPipeline(boolean pipeline)
+    {
+        this.pipeline = pipeline;
+    }
+
+    /**
+     * @return the number of threads parsing the MediaWiki content in pipeline mode, 0 meaning the number of processors
+     */
+    public int getParseThreads()
+    {
+        return parseThreads;
+    }
+
+    /**
+     * @param parseThreads the number of threads parsing the MediaWiki content in pipeline mode
+     */
+    @PropertyName("Parse Threads")
+    @PropertyDescription("Number of threads parsing MediaWiki content in pipeline mode (0 for number of processors)")
+    public void setParseThreads(int parseThreads)
+    {
+        this.parseThreads = parseThreads;
+    }
+
+    /**
+     * @return the number of threads rendering the XWiki content in pipeline mode, 0 meaning the number of processors
+     */
+    public int getRenderThreads()
+    {
+        return renderThreads;
+    }
+
+    /**
+     * @param renderThreads the number of threads rendering the XWiki content in pipeline mode
+     */
+    @PropertyName("Render Threads")
+    @PropertyDescription("Number of threads rendering XWiki content in pipeline mode (0 for the number of processors)")
+    public void setRenderThreads(int renderThreads)
+    {
+        this.renderThreads = renderThreads;
+    }
+
+    /**
+     * @return the number of threads saving the pages in pipeline mode, 0 meaning the number of processors
+     */
+    public int getSaveThreads()
+    {
+        return saveThreads;
+    }
+
+    /**
+     * @param saveThreads the number of threads saving the pages in pipeline or write-behind mode
+     */
+    @PropertyName("Save Threads")
+    @PropertyDescription("Threads saving the pages in pipeline or write-behind mode (0 for the number of processors)")
+    public void setSaveThreads(int saveThreads)
+    {
+        this.saveThreads = saveThreads;
+    }
+
+    /**
+     * @return <tt>true</tt> if an uncompressed dump is split into ranges of pages parsed in parallel
+     */
+    public boolean getSplitDump()
+    {
+        return splitDump;
+    }
+
+    /**
+     * @param splitDump <tt>true</tt> to split an uncompressed dump into ranges of pages parsed in parallel
+     */
+    @PropertyName("Split Dump")
+    @PropertyDescription("Select true to split an uncompressed dump into ranges of pages parsed in parallel")
+    public void setSplitDump(boolean splitDump)
+    {
+        this.splitDump = splitDump;
+    }
+
+    /**
+     * @return the path of the checkpoint journal, <tt>null</tt> if the import isn't checkpointed
+     */
+    public String getCheckpointPath()
+    {
+        return checkpointPath;
+    }
+
+    /**
+     * @param checkpointPath absolute path of the journal recording the imported pages
+     */
+    @PropertyName("Checkpoint Path")
+    @PropertyDescription("Absolute Path to the journal recording the imported pages, used to resume the import")
+    public void setCheckpointPath(String checkpointPath)
+    {
+        this.checkpointPath = checkpointPath;
+    }
+
+    /**
+     * @return <tt>true</tt> if the import resumes from the checkpoint journal
+     */
+    public boolean getResume()
+    {
+        return resume;
+    }
+
+    /**
+     * @param resume <tt>true</tt> to resume the import from the checkpoint journal
+     */
+    @PropertyName("Resume")
+    @PropertyDescription("Select true to resume an interrupted import from the checkpoint journal")
+    public void setResume(boolean resume)
+    {
+        this.resume = resume;
+    }
+
+    /**
+     * @return <tt>true</tt> if the MediaWiki content is converted straight into XWiki 2.0 syntax
+     */
+    public boolean getStreamingRendering()
+    {
+        return streamingRendering;
+    }
+
+    /**
+     * @param streamingRendering <tt>true</tt> to convert the MediaWiki content straight into XWiki 2.0 syntax, without
+     *            building an XDOM
+     */
+    @PropertyName("Streaming Rendering")
+    @PropertyDescription("Select true to convert MediaWiki content straight to XWiki 2.0 syntax without building XDOMs")
+    public void setStreamingRendering(boolean streamingRendering)
+    {
+        this.streamingRendering = streamingRendering;
+    }
+
+    /**
+     * @return the comma separated numbers of the namespaces whose pages aren't imported
+     */
+    public String getExcludedNamespaces()
+    {
+        return excludedNamespaces;
+    }
+
+    /**
+     * @param excludedNamespaces the comma separated numbers of the namespaces whose pages aren't imported
+     */
+    @PropertyName("Excluded Namespaces")
+    @PropertyDescription("Comma separated numbers of the namespaces whose pages are not imported (e.g. 1,2,3)")
+    public void setExcludedNamespaces(String excludedNamespaces)
+    {
+        this.excludedNamespaces = excludedNamespaces;
+    }
+
+    /**
+     * @return the regular expression the titles of the imported pages must match
+     */
+    public String getTitleFilter()
+    {
+        return titleFilter;
+    }
+
+    /**
+     * @param titleFilter the regular expression the titles of the imported pages must match
+     */
+    @PropertyName("Title Filter")
+    @PropertyDescription("Regular expression the titles of the imported pages must match")
+    public void setTitleFilter(String titleFilter)
+    {
+        this.titleFilter = titleFilter;
+    }
+
+    /**
+     * @return the range of the ids of the imported pages, as <tt>min-max</tt>
+     */
+    public String getPageIdRange()
+    {
+        return pageIdRange;
+    }
+
+    /**
+     * @param pageIdRange the range of the ids of the imported pages, as <tt>min-max</tt>, either bound being optional
+     */
+    @PropertyName("Page Id Range")
+    @PropertyDescription("Range of the ids of the imported pages, as min-max (e.g. 1000-2000 or 1000-)")
+    public void setPageIdRange(String pageIdRange)
+    {
+        this.pageIdRange = pageIdRange;
+    }
+
+    /**
+     * @return <tt>true</tt> if the titles of the dump are indexed in a first pass to resolve the links
+     */
+    public boolean getTitleIndex()
+    {
+        return titleIndex;
+    }
+
+    /**
+     * @param titleIndex <tt>true</tt> to index the titles of the dump in a first pass, so that the links are resolved
+     *            against the imported pages and the links to missing pages are reported
+     */
+    @PropertyName("Title Index")
+    @PropertyDescription("Select true to read the titles of the dump first, to resolve links to the imported pages")
+    public void setTitleIndex(boolean titleIndex)
+    {
+        this.titleIndex = titleIndex;
+    }
+
+    /**
+     * @return <tt>true</tt> if the redirect pages aren't imported, the links to them pointing to their targets
+     */
+    public boolean getSkipRedirects()
+    {
+        return skipRedirects;
+    }
+
+    /**
+     * @param skipRedirects <tt>true</tt> to skip the redirect pages and to point the links to them to their targets,
+     *            which implies the title index
+     */
+    @PropertyName("Skip Redirects")
+    @PropertyDescription("Select true to skip redirect pages and link to their targets instead (implies Title Index)")
+    public void setSkipRedirects(boolean skipRedirects)
+    {
+        this.skipRedirects = skipRedirects;
+    }
+
+    /**
+     * @return the path of the file mapping the MediaWiki templates to XWiki macros
+     */
+    public String getMacroMappingPath()
+    {
+        return macroMappingPath;
+    }
+
+    /**
+     * @param macroMappingPath the path of the file mapping the MediaWiki templates and parser functions to XWiki
+     *            macros, one <tt>name=macro|mediawiki parameter&gt;xwiki parameter|parameter=value</tt> per line
+     */
+    @PropertyName("Macro Mapping Path")
+    @PropertyDescription("Path of the file mapping MediaWiki templates to XWiki macros, e.g. Quote=quote|author>source")
+    public void setMacroMappingPath(String macroMappingPath)
+    {
+        this.macroMappingPath = macroMappingPath;
+    }
+
+    /**
+     * @return <tt>true</tt> if an attachment content referenced by several pages is only stored by the first one
+     */
+    public boolean getDeduplicateAttachments()
+    {
+        return deduplicateAttachments;
+    }
+
+    /**
+     * @param deduplicateAttachments <tt>true</tt> to store an attachment content referenced by several pages only once,
+     *            the other pages linking to the first copy
+     */
+    @PropertyName("Deduplicate Attachments")
+    @PropertyDescription("Select true to store identical attachments once, other pages linking to the first copy")
+    public void setDeduplicateAttachments(boolean deduplicateAttachments)
+    {
+        this.deduplicateAttachments = deduplicateAttachments;
+    }
+
+    /**
+     * @return the maximum number of megabytes of attachment content read ahead of the page saves, 0 meaning no read
+     *         ahead
+     */
+    public int getAttachmentPrefetchBudget()
+    {
+        return attachmentPrefetchBudget;
+    }
+
+    /**
+     * @param attachmentPrefetchBudget the maximum number of megabytes of attachment content read in the background
+     *            before the pages are saved
+     */
+    @PropertyName("Attachment Prefetch Budget")
+    @PropertyDescription("Megabytes of attachment files read in the background before pages are saved (0 for none)")
+    public void setAttachmentPrefetchBudget(int attachmentPrefetchBudget)
+    {
+        this.attachmentPrefetchBudget = attachmentPrefetchBudget;
+    }
+
+    /**
+     * @return <tt>true</tt> if the pages are saved by writer threads while the dump keeps being read
+     */
+    public boolean getWriteBehind()
+    {
+        return writeBehind;
+    }
+
+    /**
+     * @param writeBehind <tt>true</tt> to queue the parsed pages for writer threads instead of saving them before
+     *            reading the next page of the dump
+     */
+    @PropertyName("Write Behind")
+    @PropertyDescription("Select true to save pages on writer threads while the dump keeps being read")
+    public void setWriteBehind(boolean writeBehind)
+    {
+        this.writeBehind = writeBehind;
+    }
+
+    /**
+     * @return the maximum number of pages waiting for a writer in write-behind mode, 0 meaning the default
+     */
+    public int getWriteQueuePages()
+    {
+        return writeQueuePages;
+    }
+
+    /**
+     * @param writeQueuePages the maximum number of pages waiting for a writer in write-behind mode
+     */
+    @PropertyName("Write Queue Pages")
+    @PropertyDescription("Maximum number of pages waiting to be saved in write-behind mode (0 for 64)")
+    public void setWriteQueuePages(int writeQueuePages)
+    {
+        this.writeQueuePages = writeQueuePages;
+    }
+
+    /**
+     * @return the maximum number of megabytes of MediaWiki content queued in write-behind mode, 0 meaning the default
+     */
+    public int getWriteQueueMegabytes()
+    {
+        return writeQueueMegabytes;
+    }
+
+    /**
+     * @param writeQueueMegabytes the maximum number of megabytes of MediaWiki content of the pages queued or being
+     *            saved in write-behind mode
+     */
+    @PropertyName("Write Queue Size")
+    @PropertyDescription("Megabytes of page content queued or being saved in write-behind mode (0 for 64)")
+    public void setWriteQueueMegabytes(int writeQueueMegabytes)
+    {
+        this.writeQueueMegabytes = writeQueueMegabytes;
+    }
 }
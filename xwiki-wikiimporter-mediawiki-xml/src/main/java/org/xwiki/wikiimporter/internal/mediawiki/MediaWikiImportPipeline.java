@@ -0,0 +1,264 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.rendering.renderer.BlockRenderer;
+import org.xwiki.rendering.renderer.printer.DefaultWikiPrinter;
+import org.xwiki.wikiimporter.importer.WikiImporterException;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPageRevision;
+import org.xwiki.wikiimporter.wiki.WikiPageRevision;
+
+/**
+ * Staged import of the pages read from a dump. Each page goes through the following stages, each one running on its
+ * own pool of threads with a bounded backlog:
+ * <ul>
+ * <li>parse: the page and its revisions are built from the raw dump page by a {@link MediaWikiImporterListener};</li>
+ * <li>render: the MediaWiki content of the revisions is parsed into XDOMs and rendered in XWiki 2.0 syntax;</li>
+ * <li>save: the page is saved through the document bridge.</li>
+ * </ul>
+ * A page is handed from one stage to the next as a whole, so the revisions of a page are always saved in order. When a
+ * stage is full the previous one waits, down to the thread reading the dump.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiImportPipeline implements MediaWikiPageSink
+{
+    private final ComponentManager componentManager;
+
+    private final MediaWikiImportParameters params;
+
+    private final WikiImporterLogger logger;
+
+    private final BlockRenderer renderer;
+
+    private final MediaWikiWorkerPool parsePool;
+
+    private final MediaWikiWorkerPool renderPool;
+
+    private final MediaWikiWorkerPool savePool;
+
+    /**
+     * The parse stage reuses one listener and parser per thread.
+     */
+    private final ThreadLocal<MediaWikiPageProcessor> processors = new ThreadLocal<MediaWikiPageProcessor>();
+
+    /**
+     * The content parsers of the parse stage, whose statistics are logged once the import is done.
+     */
+    private final List<MediaWikiContentParser> contentParsers =
+        Collections.synchronizedList(new ArrayList<MediaWikiContentParser>());
+
+    private final MediaWikiPageSaver pageSaver;
+
+    private MediaWikiImportIndexes indexes = new MediaWikiImportIndexes();
+
+    /**
+     * @param componentManager the component manager
+     * @param params the import parameters, which define the number of threads of each stage
+     * @throws ComponentLookupException if the components needed by the stages can't be found
+     */
+    public MediaWikiImportPipeline(ComponentManager componentManager, MediaWikiImportParameters params)
+        throws ComponentLookupException
+    {
+        this.componentManager = componentManager;
+        this.params = params;
+        this.logger = componentManager.lookup(WikiImporterLogger.class);
+        this.renderer = componentManager.lookup(BlockRenderer.class, "xwiki/2.0");
+
+        this.parsePool = createPool("MediaWiki parser", params.getParseThreads());
+        this.renderPool = createPool("MediaWiki renderer", params.getRenderThreads());
+        this.savePool = createPool("MediaWiki writer", params.getSaveThreads());
+        this.pageSaver = new MediaWikiPageSaver(componentManager, params);
+    }
+
+    /**
+     * @param checkpointJournal the journal recording the saved pages, <tt>null</tt> if none
+     */
+    public void setCheckpointJournal(MediaWikiCheckpointJournal checkpointJournal)
+    {
+        this.pageSaver.setCheckpointJournal(checkpointJournal);
+    }
+
+    /**
+     * @param indexes the indexes shared by the listeners of the import
+     */
+    public void setIndexes(MediaWikiImportIndexes indexes)
+    {
+        this.indexes = indexes;
+    }
+
+    private MediaWikiWorkerPool createPool(String name, int threads) throws ComponentLookupException
+    {
+        int poolThreads = threads > 0 ? threads : MediaWikiWorkerPool.getDefaultThreads();
+
+        return new MediaWikiWorkerPool(this.componentManager, name, poolThreads, poolThreads);
+    }
+
+    /**
+     * Hands a page read from the dump to the parse stage, waiting if the stage is full.
+     * 
+     * @param page the page read from the dump
+     * @throws MediaWikiImporterException if a stage failed or if interrupted while waiting
+     */
+    public void process(final MediaWikiDumpPage page) throws MediaWikiImporterException
+    {
+        checkFailures();
+
+        this.parsePool.submit(new Runnable()
+        {
+            public void run()
+            {
+                getProcessor().process(page);
+            }
+        });
+    }
+
+    /**
+     * Called by the listeners of the parse stage, hands the parsed page to the render stage.
+     * 
+     * @see org.xwiki.wikiimporter.internal.mediawiki.MediaWikiPageSink#addWikiPage(
+     *      org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage)
+     */
+    public void addWikiPage(final MediaWikiPage page) throws WikiImporterException
+    {
+        final WikiImporterLogger.Log pageLog = this.logger.getPageLog();
+
+        this.renderPool.submit(new Runnable()
+        {
+            public void run()
+            {
+                logger.setPageLog(pageLog);
+                render(page);
+                submitSave(page, pageLog);
+            }
+        });
+    }
+
+    /**
+     * Waits for all the pages to go through all the stages and stops the threads.
+     * 
+     * @throws MediaWikiImporterException if one of the stages failed
+     */
+    public void close() throws MediaWikiImporterException
+    {
+        try {
+            this.parsePool.shutdown();
+        } finally {
+            try {
+                this.renderPool.shutdown();
+            } finally {
+                this.savePool.shutdown();
+            }
+        }
+
+        synchronized (this.contentParsers) {
+            for (MediaWikiContentParser contentParser : this.contentParsers) {
+                contentParser.logStatistics();
+            }
+        }
+    }
+
+    private void checkFailures() throws MediaWikiImporterException
+    {
+        if (this.parsePool.hasFailed() || this.renderPool.hasFailed() || this.savePool.hasFailed()) {
+            throw new MediaWikiImporterException("The import pipeline failed, see the import log");
+        }
+    }
+
+    private MediaWikiPageProcessor getProcessor()
+    {
+        MediaWikiPageProcessor processor = this.processors.get();
+        if (processor == null) {
+            try {
+                MediaWikiImporterListener listener = new MediaWikiImporterListener(this.componentManager, this.params);
+                listener.setPageSink(this);
+                listener.setIndexes(this.indexes);
+                this.contentParsers.add(listener.getContentParser());
+                processor = new MediaWikiPageProcessor(listener);
+            } catch (ComponentLookupException e) {
+                throw new RuntimeException("Failed to create MediaWikiImporterListener", e);
+            }
+            this.processors.set(processor);
+        }
+
+        return processor;
+    }
+
+    /**
+     * Renders the XDOM of the revisions which are going to be saved and releases it.
+     */
+    private void render(MediaWikiPage page)
+    {
+        if (this.params.getPreserveHistory()) {
+            for (WikiPageRevision revision : page.getRevisions()) {
+                render((MediaWikiPageRevision) revision);
+            }
+        } else {
+            render(page.getLastRevision());
+        }
+    }
+
+    private void render(MediaWikiPageRevision revision)
+    {
+        // Already converted straight into XWiki 2.0 syntax with streaming rendering.
+        if (revision.getRenderedContent() != null) {
+            return;
+        }
+
+        XDOM xdom = revision.getContent();
+        if (xdom != null) {
+            try {
+                DefaultWikiPrinter printer = new DefaultWikiPrinter();
+                this.renderer.render(xdom, printer);
+                revision.setRenderedContent(printer.toString());
+                revision.setContent(null);
+            } catch (Exception e) {
+                // Let the document bridge fall back on the original content.
+                this.logger.warn("Failed to render revision " + revision.getVersion() + ": " + e.getMessage(), true);
+            }
+        }
+    }
+
+    private void submitSave(final MediaWikiPage page, final WikiImporterLogger.Log pageLog)
+    {
+        try {
+            this.savePool.submit(new Runnable()
+            {
+                public void run()
+                {
+                    logger.setPageLog(pageLog);
+                    pageSaver.addWikiPage(page);
+                }
+            });
+        } catch (MediaWikiImporterException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
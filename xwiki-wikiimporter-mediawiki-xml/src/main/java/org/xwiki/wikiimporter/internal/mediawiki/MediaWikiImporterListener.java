@@ -19,29 +19,28 @@
  */
 package org.xwiki.wikiimporter.internal.mediawiki;
 
-import java.lang.reflect.Field;
-import java.lang.reflect.Method;
-import java.util.ArrayList;
-import java.util.Arrays;
-import java.util.HashMap;
+import java.io.File;
+import java.net.URI;
+import java.text.DateFormat;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.HashSet;
 import java.util.List;
-import java.util.Map;
-import java.util.Stack;
+import java.util.Set;
+import java.util.TimeZone;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
-import org.apache.commons.lang.StringUtils;
 import org.xml.sax.InputSource;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
-import org.xwiki.rendering.block.Block;
-import org.xwiki.rendering.internal.parser.XDOMGeneratorListener;
-import org.xwiki.rendering.listener.reference.DocumentResourceReference;
-import org.xwiki.rendering.listener.reference.ResourceReference;
-import org.xwiki.wikiimporter.bridge.WikiImporterDocumentBridge;
 import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
 import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiAttachment;
 import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
 import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPageRevision;
 import org.xwiki.wikiimporter.listener.AbstractWikiImporterListenerXDOM;
+import org.xwiki.wikiimporter.wiki.Attachment;
+import org.xwiki.wikiimporter.wiki.WikiPageRevision;
 
 /**
  * Contains callback events called when a document to be imported has been parsed by MediWiki XML Parser
@@ -50,6 +49,20 @@ import org.xwiki.wikiimporter.listener.AbstractWikiImporterListenerXDOM;
  */
 public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
 {
+    /**
+     * The image links of the MediaWiki content, whose target is the name of an uploaded file. The links to the file
+     * pages, starting with a colon, don't add an attachment.
+     */
+    private static final Pattern IMAGE_LINK =
+        Pattern.compile("\\[\\[\\s*(?:file|image)\\s*:([^|\\[\\]#\\n]+)", Pattern.CASE_INSENSITIVE);
+
+    /**
+     * The format of the revision timestamps of the MediaWiki XML dumps, always in UTC.
+     */
+    private static final String TIMESTAMP_FORMAT = "yyyy-MM-dd'T'HH:mm:ss'Z'";
+
+    private final DateFormat timestampFormat = new SimpleDateFormat(TIMESTAMP_FORMAT);
+
     private MediaWikiPage currentPage;
 
     private MediaWikiPageRevision currentPageRevision;
@@ -60,74 +73,66 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
 
     private MediaWikiImportParameters importParams;
 
-    private List<String> attachments = new ArrayList<String>();
+    private WikiImporterLogger logger;
 
-    private int macroErrors;
+    private MediaWikiPageSink pageSink;
 
-    private WikiImporterLogger logger;
+    private MediaWikiPageSaver pageSaver;
+
+    private MediaWikiContentParser contentParser;
 
-    private WikiImporterDocumentBridge docBridge;
+    private MediaWikiImportIndexes indexes;
 
     public MediaWikiImporterListener(ComponentManager componentManager, MediaWikiImportParameters params)
         throws ComponentLookupException
     {
         this.logger = componentManager.lookup(WikiImporterLogger.class);
-        this.docBridge = componentManager.lookup(WikiImporterDocumentBridge.class);
         this.importParams = params;
+        this.pageSaver = new MediaWikiPageSaver(componentManager, params);
+        this.contentParser = new MediaWikiContentParser(componentManager, params);
         this.currentMediaWikiContent = "";
+        this.timestampFormat.setTimeZone(TimeZone.getTimeZone("UTC"));
     }
 
-    private void newXDOMGeneratorListener()
+    /**
+     * @param pageSink the sink receiving the completed pages instead of saving them right away
+     */
+    public void setPageSink(MediaWikiPageSink pageSink)
     {
-        setWrappedListener(new XDOMGeneratorListener()
-        {
-            public Stack<Block> getStack()
-            {
-                try {
-                    Field field = getClass().getDeclaredField("stack");
-                    field.setAccessible(true);
-
-                    return (Stack<Block>) field.get(this);
-                } catch (Exception e) {
-
-                }
-
-                return null;
-            }
-        });
+        this.pageSink = pageSink;
     }
 
-    private XDOMGeneratorListener getXDOMGeneratorListener()
+    /**
+     * @return the sink receiving the completed pages, <tt>null</tt> if they are saved right away
+     */
+    public MediaWikiPageSink getPageSink()
     {
-        return (XDOMGeneratorListener) getWrappedListener();
+        return this.pageSink;
     }
 
-    private Stack<Block> getStack()
+    /**
+     * @param checkpointJournal the journal recording the saved pages, <tt>null</tt> if none
+     */
+    public void setCheckpointJournal(MediaWikiCheckpointJournal checkpointJournal)
     {
-        try {
-            Field field = XDOMGeneratorListener.class.getDeclaredField("stack");
-            field.setAccessible(true);
-
-            return (Stack<Block>) field.get(getXDOMGeneratorListener());
-        } catch (Exception e) {
-
-        }
-
-        return null;
+        this.pageSaver.setCheckpointJournal(checkpointJournal);
     }
 
-    private List<Block> generateListFromStack()
+    /**
+     * @param indexes the indexes shared by the listeners of the import
+     */
+    public void setIndexes(MediaWikiImportIndexes indexes)
     {
-        try {
-            Method method = XDOMGeneratorListener.class.getDeclaredMethod("generateListFromStack");
-            method.setAccessible(true);
-
-            return (List<Block>) method.invoke(getXDOMGeneratorListener());
-        } catch (Exception e) {
-
-        }
+        this.indexes = indexes;
+        this.contentParser.setIndexes(indexes);
+    }
 
-        return null;
+    /**
+     * @return the parser of the MediaWiki content of the revisions built by this listener
+     */
+    public MediaWikiContentParser getContentParser()
+    {
+        return this.contentParser;
     }
 
     public void setCurrentMediaWikiContent(String currentContent) {
@@ -147,7 +152,7 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
     {
         System.out.println("Adding attachment " + attachmentName + " to page " + this.currentPage.getName());
         this.currentPage.addAttachment(new MediaWikiAttachment(this.importParams.getAttachmentSrcPath(),
-            attachmentName, this.importParams.getAttachmentExcludeDirs(), this.logger));
+            attachmentName, this.importParams.getAttachmentExcludeDirs(), this.indexes, this.logger));
         endAttachment();
     }
 
@@ -175,9 +180,6 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
         this.currentPage.addRevision(this.currentPageRevision);
         this.currentId = null;
         this.logger.nextPage();
-        newXDOMGeneratorListener();
-        this.attachments.clear();
-        this.macroErrors = 0;
     }
 
     /**
@@ -192,7 +194,6 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
             this.currentPage.addRevision(this.currentPageRevision);
         }
         this.currentPageRevision.setVersion(null);
-        newXDOMGeneratorListener();
     }
 
     /**
@@ -224,27 +225,57 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
     {
         // Logging - set original page title for reference.
         this.logger.getPageLog().setLog(this.currentPage.getLastRevision().getTitle());
-        if (this.macroErrors > 0) {
-            this.logger.warn("Total Macro Errors reported on this page :" + macroErrors, true);
-        }
 
-        // attachments
-        if (this.currentPage.getAttachments().size() > 0) {
-            this.logger.info("Total Attachments encountered :" + attachments.size(), true);
-        }
+        prefetchAttachments(this.currentPage);
 
         try {
-            // Save the Wiki Page.
-            this.docBridge.addWikiPage(this.currentPage, this.importParams);
+            // Save the Wiki Page, or hand it to the sink which saves it.
+            if (this.pageSink != null) {
+                this.pageSink.addWikiPage(this.currentPage);
+            } else {
+                this.pageSaver.addWikiPage(this.currentPage);
+            }
         } catch (Exception e) {
             this.logger.error("Failed to create the page: " + e.getMessage(), true);
-            // Do nothing.
+            // The page may not have reached the document bridge, which releases the attachments.
+            for (Attachment attachment : this.currentPage.getAttachments()) {
+                attachment.release();
+            }
         }
 
         this.currentPage = null;
         this.currentPageRevision = null;
     }
 
+    /**
+     * Starts reading the files of the images of the page as soon as it's read, before it's handed to the sink, so that
+     * the reads overlap with the parsing and the saving of the pages. The attachments themselves are added when the
+     * content is converted, and take the prefetched contents.
+     */
+    private void prefetchAttachments(MediaWikiPage page)
+    {
+        if (this.indexes == null || this.indexes.getAttachmentPrefetcher() == null) {
+            return;
+        }
+
+        Set<String> attachmentNames = new HashSet<String>();
+        for (WikiPageRevision revision : page.getRevisions()) {
+            if (revision.getOriginalContent() == null) {
+                continue;
+            }
+
+            Matcher matcher = IMAGE_LINK.matcher(revision.getOriginalContent());
+            while (matcher.find()) {
+                // Same name as the converted image references.
+                String attachmentName = matcher.group(1).trim().replace(' ', '_');
+                if (attachmentName.length() > 0 && attachmentNames.add(attachmentName)) {
+                    new MediaWikiAttachment(this.importParams.getAttachmentSrcPath(), attachmentName,
+                        this.importParams.getAttachmentExcludeDirs(), this.indexes, this.logger).prefetch();
+                }
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -254,7 +285,8 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
     {
        try {
         this.currentPageRevision.setOriginalContent(this.currentMediaWikiContent);
-        this.currentPageRevision.setContent(getXDOMGeneratorListener().getXDOM());
+        // The content is parsed when the revision is written.
+        this.currentPageRevision.setContentParser(this.contentParser, this.currentPage);
         System.out.println("Success getting revision data for page " + currentPageRevision.getTitle() + " for version " + currentPageRevision.getVersion());
        } catch(Exception e) {
         e.printStackTrace();
@@ -263,6 +295,9 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
         if (list.size()>1)
             list.remove(this.currentPage.getLastRevision());
        }
+
+        // The next revision starts from a copy of this one.
+        this.currentPageRevision = null;
     }
 
     /**
@@ -273,7 +308,10 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
      */
     public void onAttachmentRevision(String attachmentName, InputSource input)
     {
-        // TODO
+        // The uploads of the dump are decoded into temporary files, given by their URI. The names of the attachments
+        // use underscores, as in the converted image references.
+        File file = new File(URI.create(input.getSystemId()));
+        this.currentPage.addAttachment(new MediaWikiAttachment(file, attachmentName.replace(' ', '_'), this.logger));
     }
 
     /**
@@ -286,256 +324,27 @@ public class MediaWikiImporterListener extends AbstractWikiImporterListenerXDOM
         System.out.println("Found property :  " + property + " :" + value);
         if (property.equals(MediaWikiConstants.PAGE_TITLE_TAG)) {
             this.currentPageRevision.setTitle(value);
+        } else if (property.equals(MediaWikiConstants.NAMESPACE_PREFIX_PROPERTY)) {
+            this.currentPage.setNamespacePrefix(value);
         } else if (property.equals(MediaWikiConstants.AUTHOR_TAG)) {
             this.currentPageRevision.setAuthor(value);
         } else if (property.equals(MediaWikiConstants.COMMENT_TAG)) {
             this.currentPageRevision.setComment(value);
+        } else if (property.equals(MediaWikiConstants.TIMESTAMP_TAG)) {
+            try {
+                this.currentPageRevision.setDate(this.timestampFormat.parse(value));
+            } catch (ParseException e) {
+                this.logger.warn("Invalid timestamp [" + value + "] of the version "
+                    + this.currentPageRevision.getVersion() + ", the date of the import is used instead.", true);
+            }
         } else if (property.equals(MediaWikiConstants.VERSION_TAG)) {
             if (this.currentId==null) {
                 this.currentId = value;
+                this.currentPage.setId(value);
             } else if (this.currentPageRevision.getVersion()==null)
                this.currentPageRevision.setVersion(value);
         } else if (property.equals(MediaWikiConstants.IS_MINOR_TAG)) {
             this.currentPageRevision.setMinorEdit(Boolean.valueOf(value));
         }
     }
-
-    /**
-     * {@inheritDoc}
-     * 
-     * @see org.xwiki.rendering.listener.WrappingListener#endQuotation(java.util.Map)
-     */
-    // TODO: this should be fixed in the MediaWiki parser itself
-   /*
-    public void endQuotation(Map<String, String> parameters)
-    {
-        QuotationBlock quotationBlock = new QuotationBlock(generateListFromStack(), parameters);
-        if (!getStack().isEmpty() && getStack().peek() instanceof QuotationBlock) {
-            QuotationBlock lastBlock = (QuotationBlock) getStack().peek();
-            lastBlock.addChildren(quotationBlock.getChildren());
-        } else {
-            getStack().push(quotationBlock);
-        }
-    }
-   */
-
-    /**
-     * {@inheritDoc}
-     * 
-     * @see org.xwiki.rendering.listener.WrappingListener#beginLink(org.xwiki.rendering.listener.reference.ResourceReference,
-     *      boolean, java.util.Map)
-     */
-    public void beginLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
-    {
-        String linkReference = reference.getReference();
-        System.out.println("beginLink with reference: " + linkReference);
-        // Convert Categories to Tags.
-        if (linkReference.startsWith("Category")) {
-            String[] refData = linkReference.split(":");
-            if (refData.length>1)
-             this.currentPageRevision.addTag(refData[1]);
-            return;
-        }
-
-        if (linkReference.contains("::")) {
-            // we don't know how to treat these links
-            return;
-        }
-
-        // Convert from MediaWiki link to XWiki link
-        reference = converReference(reference);
-
-        super.beginLink(reference, isFreeStandingURI, parameters);
-    }
-
-
-    public void onImage(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
-    {
-        System.out.println("Converting image reference: " + reference);
-        ResourceReference xwikiLink =
-            new ResourceReference(reference.getReference(), reference.getType());
-        String resourceName = reference.getReference();
-        resourceName = resourceName.replaceAll(" ", "_");
-        xwikiLink.setReference("image:" + resourceName);
-        beginAttachment(resourceName);
-
-        super.onImage(xwikiLink, isFreeStandingURI, parameters);
-    }
-
-    /**
-     * {@inheritDoc}
-     * 
-     * @see org.xwiki.rendering.listener.WrappingListener#endLink(org.xwiki.rendering.listener.reference.ResourceReference,
-     *      boolean, java.util.Map)
-     */
-    public void endLink(ResourceReference reference, boolean isFreeStandingURI, Map<String, String> parameters)
-    {
-        String linkReference = reference.getReference();
-        System.out.println("endLink with reference: " + linkReference);
-
-        // Convert Categories to Tags.
-        if (linkReference.startsWith("Category")||linkReference.contains("::")) {
-            return;
-        }
-
-        // Convert from MediaWiki link to XWiki link
-        reference = converReference(reference);
-
-        super.endLink(reference, isFreeStandingURI, parameters);
-    }
-
-    /**
-     * Convert from MediaWiki reference to XWiki reference.
-     */
-    private ResourceReference converReference(ResourceReference mediaWikiReference)
-    {
-      System.out.println("Converting reference: " + mediaWikiReference);
-      try {
-        boolean isImage = false;
-
-        // If link reference is a external url
-        if (-1 != mediaWikiReference.getReference().indexOf("://")) {
-            return mediaWikiReference;
-        }
-
-        // if link reference is an email
-        if (mediaWikiReference.getReference().startsWith("mailto:")) {
-            int spaceOccurence = mediaWikiReference.getReference().indexOf(' ');
-            if (-1 != spaceOccurence) {
-
-            }
-
-            return mediaWikiReference;
-        }
-
-/*
-        if (mediaWikiReference.getReference().startsWith("Image:")) {
-            System.out.println("Found Image: in reference");
-            isImage = true;
-            mediaWikiReference.setReference(mediaWikiReference.getReference().substring(6));
-        }
-*/
-
-        ResourceReference xwikiLink =
-            new ResourceReference(mediaWikiReference.getReference(), mediaWikiReference.getType());
-
-        xwikiLink.setParameters(mediaWikiReference.getParameters());
-
-        // Handle Colon (:) - Links like [[Space:Page]]
-        if (xwikiLink.getReference().contains(":") && !xwikiLink.getReference().endsWith(":")) {
-            String[] parts = xwikiLink.getReference().split(":");
-            String nameSpace = parts[0];
-            if (StringUtils.isNotEmpty(this.importParams.getTargetSpace())) {
-                nameSpace = this.importParams.getTargetSpace();
-            }
-            String resourceName = parts[1];
-            System.out.println("Checking namespace=" + nameSpace + " resource=" + resourceName);
-        
-            if (isImage(nameSpace, resourceName)) {
-                resourceName.replaceAll(" ", "_");
-                System.out.println("Found image " + resourceName);
-                xwikiLink.setReference("image:" + resourceName);
-                beginAttachment(resourceName);
-
-            } else if (nameSpace.equalsIgnoreCase("media") || nameSpace.equalsIgnoreCase("file")) {
-                System.out.println("Found attachment " + resourceName);
-                xwikiLink.setReference("attach:" + resourceName);
-                beginAttachment(resourceName);
-
-            } else if (-1 != resourceName.indexOf('/')) {
-                xwikiLink.setReference(nameSpace + "."
-                    + MediaWikiConstants.convertPageName(resourceName.substring(resourceName.lastIndexOf('/') + 1)));
-            } else {
-                xwikiLink.setReference(nameSpace + "." + MediaWikiConstants.convertPageName(resourceName));
-            }
-        } else if (StringUtils.isNotEmpty(xwikiLink.getReference())) {
-            // If linkreference is not referred to a space, set the default space as Main.
-            xwikiLink.setReference(getDefaultSpace() + "."
-                + MediaWikiConstants.convertPageName(xwikiLink.getReference()));
-        }
-
-        // Fix Category Link [[:Category:Help|HELP]]
-        if (xwikiLink.getReference().startsWith(":Category:") || xwikiLink.getReference().startsWith(":category:")) {
-            String categoryReference = xwikiLink.getReference().substring(":Category:".length()).trim();
-            if (!"".equals(categoryReference)) {
-                xwikiLink.setReference("Main.Tags");
-                xwikiLink.setParameter(DocumentResourceReference.QUERY_STRING, "do=viewTag&tag=" + categoryReference);
-            } else {
-
-            }
-        }
-
-        // Handle hierarchy ('/')
-        if (-1 != xwikiLink.getReference().indexOf('/')) {
-            xwikiLink.setReference(getDefaultSpace()
-                + "."
-                + MediaWikiConstants.convertPageName(xwikiLink.getReference().substring(
-                    xwikiLink.getReference().lastIndexOf('/') + 1)));
-        }
-
-        System.out.println("Found link " + xwikiLink.getReference());
-
-        return xwikiLink;
-       } catch (Exception e) {
-        System.out.println("Failed to convert reference");
-        e.printStackTrace();
-        return mediaWikiReference;
-       }
-    }
-
-    /**
-     * Check if the file is a image.
-     * 
-     * @param nameSpace Namespace of the file.Images usually have File or Image and namespace.
-     * @param fileName name of the file with extension
-     * @return
-     */
-    private boolean isImage(String nameSpace, String fileName)
-    {
-        if (nameSpace.equalsIgnoreCase("image"))
-            return true;
-
-        int dotIndex = fileName.indexOf('.');
-        String[] fileExtensions = {"png", "gif", "jpg", "jpeg", "svg", "tiff", "tif"};
-        if ((nameSpace.equalsIgnoreCase("image") || nameSpace.equalsIgnoreCase("file")) && -1 != dotIndex) {
-            String fileExtension = fileName.substring(dotIndex + 1).toLowerCase();
-            return Arrays.asList(fileExtensions).contains(fileExtension);
-        }
-
-        return false;
-    }
-
-    /**
-     * @return the default space.
-     */
-    private String getDefaultSpace()
-    {
-        if (StringUtils.isNotBlank(this.importParams.getTargetSpace())) {
-            return this.importParams.getTargetSpace();
-        } else if (StringUtils.isNotBlank(this.importParams.getDefaultSpace())) {
-            return this.importParams.getDefaultSpace();
-        }
-
-        return "Main";
-    }
-
-    /**
-     * {@inheritDoc}
-     * 
-     * @see org.xwiki.rendering.listener.Listener#onMacro(java.lang.String, java.util.Map, java.lang.String, boolean)
-     */
-    public void onMacro(String id, Map<String, String> macroParameters, String content, boolean isInline)
-    {
-        System.out.println("Found macro " + id);
-        if (id.equals("toc") || id.equals("forcetoc")) {
-            macroParameters =
-                macroParameters != null ? new HashMap<String, String>(macroParameters) : new HashMap<String, String>();
-            macroParameters.put("numbered", "true");
-        } else {
-            id = "warning";
-            this.macroErrors++;
-        }
-
-        super.onMacro(id, macroParameters, content, isInline);
-    }
 }
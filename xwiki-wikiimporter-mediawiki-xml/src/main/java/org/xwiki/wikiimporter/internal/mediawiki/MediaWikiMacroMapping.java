@@ -0,0 +1,223 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
+
+/**
+ * Mapping of the MediaWiki templates and parser functions to XWiki macros, compiled once into a table giving each
+ * MediaWiki name its XWiki macro, its renamed parameters and its fixed parameters.
+ * <p>
+ * The mapping file has one line per template, <tt>#</tt> starting a comment:
+ * 
+ * <pre>
+ * MediaWiki name=XWiki macro|mediawiki parameter&gt;xwiki parameter|fixed parameter=value
+ * </pre>
+ * 
+ * For instance <tt>Quote=quote|author&gt;source</tt>. The table of contents is always mapped, to a numbered
+ * <tt>toc</tt> macro. As in MediaWiki, the case of the first letter of the names doesn't matter.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiMacroMapping
+{
+    /**
+     * The XWiki macro a MediaWiki template or parser function is converted to.
+     */
+    public static class Macro
+    {
+        private final String id;
+
+        private final Map<String, String> renamedParameters = new HashMap<String, String>();
+
+        private final Map<String, String> fixedParameters = new LinkedHashMap<String, String>();
+
+        /**
+         * The parameters of the macro when the template has none, shared by all the calls.
+         */
+        private Map<String, String> defaultParameters;
+
+        /**
+         * @param id the id of the XWiki macro
+         */
+        public Macro(String id)
+        {
+            this.id = id;
+        }
+
+        /**
+         * @return the id of the XWiki macro
+         */
+        public String getId()
+        {
+            return this.id;
+        }
+
+        /**
+         * @param parameters the parameters of the MediaWiki template, <tt>null</tt> if none
+         * @return the parameters of the XWiki macro: the parameters of the template, renamed, and the fixed ones
+         */
+        public Map<String, String> convertParameters(Map<String, String> parameters)
+        {
+            if (parameters == null || parameters.isEmpty()) {
+                return this.defaultParameters;
+            }
+            if (this.renamedParameters.isEmpty() && this.fixedParameters.isEmpty()) {
+                return parameters;
+            }
+
+            Map<String, String> xwikiParameters =
+                new LinkedHashMap<String, String>(parameters.size() + this.fixedParameters.size());
+            for (Map.Entry<String, String> parameter : parameters.entrySet()) {
+                String name = this.renamedParameters.get(parameter.getKey());
+                xwikiParameters.put(name != null ? name : parameter.getKey(), parameter.getValue());
+            }
+            xwikiParameters.putAll(this.fixedParameters);
+
+            return xwikiParameters;
+        }
+
+        private void compile()
+        {
+            this.defaultParameters = Collections.unmodifiableMap(this.fixedParameters);
+        }
+    }
+
+    private static final String UTF8 = "UTF-8";
+
+    private static final String PARAMETER_SEPARATOR = "|";
+
+    private static final String NUMBERED_TOC = "toc|numbered=true";
+
+    /**
+     * The mappings already loaded, by path, so that the parsers of all the import workers share them.
+     */
+    private static final Map<String, MediaWikiMacroMapping> MAPPINGS = new HashMap<String, MediaWikiMacroMapping>();
+
+    private final Map<String, Macro> macros = new HashMap<String, Macro>();
+
+    private long lastModified;
+
+    /**
+     * Creates the default mapping, which only converts the table of contents.
+     */
+    public MediaWikiMacroMapping()
+    {
+        addMacro("toc", NUMBERED_TOC);
+        addMacro("forcetoc", NUMBERED_TOC);
+    }
+
+    /**
+     * @param path the path of the mapping file, empty for the default mapping
+     * @return the mapping loaded from the file, loaded once until the file changes
+     * @throws MediaWikiImporterException if the mapping file can't be read
+     */
+    public static MediaWikiMacroMapping getMapping(String path) throws MediaWikiImporterException
+    {
+        String key = StringUtils.defaultString(path);
+        synchronized (MAPPINGS) {
+            MediaWikiMacroMapping mapping = MAPPINGS.get(key);
+            File file = StringUtils.isNotEmpty(path) ? new File(path) : null;
+            if (mapping == null || (file != null && file.lastModified() != mapping.lastModified)) {
+                mapping = new MediaWikiMacroMapping();
+                if (file != null) {
+                    mapping.load(file);
+                }
+                MAPPINGS.put(key, mapping);
+            }
+
+            return mapping;
+        }
+    }
+
+    /**
+     * @param name the name of a MediaWiki template or parser function
+     * @return the XWiki macro it's converted to, <tt>null</tt> if it isn't mapped
+     */
+    public Macro getMacro(String name)
+    {
+        return this.macros.get(name);
+    }
+
+    private void load(File file) throws MediaWikiImporterException
+    {
+        this.lastModified = file.lastModified();
+
+        BufferedReader reader = null;
+        try {
+            reader = new BufferedReader(new InputStreamReader(new FileInputStream(file), UTF8));
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                line = line.trim();
+                if (line.length() == 0 || line.startsWith("#")) {
+                    continue;
+                }
+
+                int separator = line.indexOf('=');
+                String name = separator > 0 ? line.substring(0, separator).trim() : "";
+                String definition = separator > 0 ? line.substring(separator + 1).trim() : "";
+                if (name.length() == 0 || definition.length() == 0 || definition.startsWith(PARAMETER_SEPARATOR)) {
+                    throw new MediaWikiImporterException("Invalid macro mapping [" + line + "] in " + file);
+                }
+                addMacro(name, definition);
+            }
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Failed to read the macro mapping file " + file, e);
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+    }
+
+    /**
+     * @param name the name of the MediaWiki template or parser function
+     * @param definition the XWiki macro followed by the renamed and the fixed parameters
+     */
+    private void addMacro(String name, String definition)
+    {
+        String[] parts = StringUtils.split(definition, PARAMETER_SEPARATOR);
+        Macro macro = new Macro(parts[0].trim());
+        for (int i = 1; i < parts.length; ++i) {
+            int rename = parts[i].indexOf('>');
+            int value = parts[i].indexOf('=');
+            if (rename > 0 && (value < 0 || rename < value)) {
+                macro.renamedParameters.put(parts[i].substring(0, rename).trim(), parts[i].substring(rename + 1)
+                    .trim());
+            } else if (value > 0) {
+                macro.fixedParameters.put(parts[i].substring(0, value).trim(), parts[i].substring(value + 1));
+            }
+        }
+        macro.compile();
+
+        // The first letter of the MediaWiki names is case insensitive.
+        this.macros.put(name, macro);
+        this.macros.put(Character.toUpperCase(name.charAt(0)) + name.substring(1), macro);
+        this.macros.put(Character.toLowerCase(name.charAt(0)) + name.substring(1), macro);
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.util.HashSet;
+import java.util.Set;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+
+import org.apache.commons.lang.StringUtils;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPageFilter;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPageRevision;
+
+/**
+ * Rejects the pages which wouldn't be imported before their revisions are read: the pages the document bridge would
+ * skip because of their name or space, the pages excluded by the namespace, title and id range parameters, and the
+ * redirects when they're skipped.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiPageFilter implements MediaWikiDumpPageFilter
+{
+    private static final String CATEGORY_SPACE = "Category";
+
+    private String defaultSpace;
+
+    private Set<String> excludedNamespaces = new HashSet<String>();
+
+    private Pattern titlePattern;
+
+    private long minId = Long.MIN_VALUE;
+
+    private long maxId = Long.MAX_VALUE;
+
+    private boolean skipRedirects;
+
+    /**
+     * The ids of the only pages accepted, <tt>null</tt> to accept any id.
+     */
+    private Set<String> pageIds;
+
+    /**
+     * @param params the import parameters
+     * @throws MediaWikiImporterException if the filter parameters are invalid
+     */
+    public MediaWikiPageFilter(MediaWikiImportParameters params) throws MediaWikiImporterException
+    {
+        this.defaultSpace = params.getDefaultSpace();
+        this.skipRedirects = params.getSkipRedirects();
+
+        if (StringUtils.isNotBlank(params.getExcludedNamespaces())) {
+            for (String namespace : params.getExcludedNamespaces().split(",")) {
+                this.excludedNamespaces.add(namespace.trim());
+            }
+        }
+
+        if (StringUtils.isNotEmpty(params.getTitleFilter())) {
+            try {
+                this.titlePattern = Pattern.compile(params.getTitleFilter());
+            } catch (PatternSyntaxException e) {
+                throw new MediaWikiImporterException("Invalid title filter " + params.getTitleFilter(), e);
+            }
+        }
+
+        if (StringUtils.isNotBlank(params.getPageIdRange())) {
+            String[] range = params.getPageIdRange().split("-", 2);
+            try {
+                if (StringUtils.isNotBlank(range[0])) {
+                    this.minId = Long.parseLong(range[0].trim());
+                }
+                if (range.length > 1 && StringUtils.isNotBlank(range[1])) {
+                    this.maxId = Long.parseLong(range[1].trim());
+                }
+            } catch (NumberFormatException e) {
+                throw new MediaWikiImporterException("Invalid page id range " + params.getPageIdRange(), e);
+            }
+        }
+    }
+
+    /**
+     * @param pageIds the ids of the only pages accepted, <tt>null</tt> to accept any id
+     */
+    public void setPageIds(Set<String> pageIds)
+    {
+        this.pageIds = pageIds;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPageFilter#accept(MediaWikiDumpPage)
+     */
+    public boolean accept(MediaWikiDumpPage page)
+    {
+        return acceptName(page) && acceptNamespace(page) && acceptTitle(page) && acceptId(page)
+            && (!this.skipRedirects || page.getRedirect() == null);
+    }
+
+    /**
+     * Same rules as the document bridge, which would skip the page once parsed.
+     */
+    private boolean acceptName(MediaWikiDumpPage page)
+    {
+        MediaWikiPageRevision revision = new MediaWikiPageRevision();
+        revision.setTitle(page.getTitle());
+        MediaWikiPage wikiPage = new MediaWikiPage(this.defaultSpace);
+        wikiPage.setNamespacePrefix(page.getNamespacePrefix());
+        wikiPage.addRevision(revision);
+
+        return StringUtils.isNotBlank(wikiPage.getName()) && StringUtils.isNotBlank(wikiPage.getSpace())
+            && !CATEGORY_SPACE.equalsIgnoreCase(wikiPage.getSpace());
+    }
+
+    private boolean acceptNamespace(MediaWikiDumpPage page)
+    {
+        return page.getNamespace() == null || !this.excludedNamespaces.contains(page.getNamespace());
+    }
+
+    private boolean acceptTitle(MediaWikiDumpPage page)
+    {
+        return this.titlePattern == null || (page.getTitle() != null && this.titlePattern.matcher(page.getTitle())
+            .matches());
+    }
+
+    private boolean acceptId(MediaWikiDumpPage page)
+    {
+        if (page.getId() == null) {
+            return this.pageIds == null;
+        } else if (this.pageIds != null && !this.pageIds.contains(page.getId())) {
+            return false;
+        }
+
+        try {
+            long id = Long.parseLong(page.getId());
+
+            return id >= this.minId && id <= this.maxId;
+        } catch (NumberFormatException e) {
+            return true;
+        }
+    }
+}
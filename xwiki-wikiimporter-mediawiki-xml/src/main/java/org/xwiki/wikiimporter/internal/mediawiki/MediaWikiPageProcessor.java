@@ -0,0 +1,106 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import org.xml.sax.InputSource;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpRevision;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpUpload;
+
+/**
+ * Fires the events of a raw {@link MediaWikiDumpPage} on a {@link MediaWikiImporterListener}. The MediaWiki content of
+ * the revisions is handed over as is, it's parsed when the revision is written. This is the counterpart of
+ * {@link MediaWikiXmlHandler} for the pull based reader.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiPageProcessor
+{
+    private MediaWikiImporterListener listener;
+
+    public MediaWikiPageProcessor(MediaWikiImporterListener listener)
+    {
+        this.listener = listener;
+    }
+
+    /**
+     * @param page the page read from the dump
+     */
+    public void process(MediaWikiDumpPage page)
+    {
+        this.listener.beginWikiPage();
+
+        fireProperty(MediaWikiConstants.PAGE_TITLE_TAG, page.getTitle());
+        fireProperty(MediaWikiConstants.NAMESPACE_PREFIX_PROPERTY, page.getNamespacePrefix());
+        fireProperty(MediaWikiConstants.VERSION_TAG, page.getId());
+
+        for (MediaWikiDumpRevision revision : page.getRevisions()) {
+            processRevision(revision);
+        }
+
+        for (MediaWikiDumpUpload upload : page.getUploads()) {
+            processUpload(upload);
+        }
+
+        this.listener.endWikiPage();
+    }
+
+    /**
+     * Fires the events of a single revision, the page events being fired by the caller.
+     * 
+     * @param revision the revision read from the dump
+     */
+    public void processRevision(MediaWikiDumpRevision revision)
+    {
+        this.listener.beginWikiPageRevision();
+
+        fireProperty(MediaWikiConstants.VERSION_TAG, revision.getId());
+        fireProperty(MediaWikiConstants.TIMESTAMP_TAG, revision.getTimestamp());
+        fireProperty(MediaWikiConstants.AUTHOR_TAG, revision.getAuthor());
+        fireProperty(MediaWikiConstants.IS_MINOR_TAG, String.valueOf(revision.isMinor()));
+        fireProperty(MediaWikiConstants.COMMENT_TAG, revision.getComment());
+
+        setText(revision);
+
+        this.listener.endWikiPageRevision();
+    }
+
+    /**
+     * Hands the decoded content of an upload to the listener, by the URI of its temporary file.
+     * 
+     * @param upload the upload read from the dump
+     */
+    public void processUpload(MediaWikiDumpUpload upload)
+    {
+        this.listener.onAttachmentRevision(upload.getFileName(), new InputSource(upload.getFile().toURI().toString()));
+    }
+
+    private void fireProperty(String property, String value)
+    {
+        if (value != null) {
+            this.listener.onProperty(property, value);
+        }
+    }
+
+    private void setText(MediaWikiDumpRevision revision)
+    {
+        this.listener.setCurrentMediaWikiContent(revision.getText() != null ? revision.getText() : "");
+    }
+}
@@ -0,0 +1,107 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.io.IOException;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.wikiimporter.bridge.WikiImporterDocumentBridge;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+
+/**
+ * Saves the pages through the document bridge and records them in the checkpoint journal, the pages which fail to be
+ * saved being recorded as failed so that they're imported again when the import is resumed. It's the default sink of
+ * {@link MediaWikiImporterListener}, and the last step of the sinks saving the pages on other threads, so that all the
+ * import modes report the errors and commit the pages the same way. The errors are reported to the log of the page in
+ * use by the calling thread. It can be used from any thread.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiPageSaver implements MediaWikiPageSink
+{
+    private final MediaWikiImportParameters params;
+
+    private final WikiImporterDocumentBridge docBridge;
+
+    private final WikiImporterLogger logger;
+
+    private MediaWikiCheckpointJournal checkpointJournal;
+
+    /**
+     * @param componentManager the component manager
+     * @param params the import parameters
+     * @throws ComponentLookupException if the document bridge or the logger can't be found
+     */
+    public MediaWikiPageSaver(ComponentManager componentManager, MediaWikiImportParameters params)
+        throws ComponentLookupException
+    {
+        this.params = params;
+        this.docBridge = componentManager.lookup(WikiImporterDocumentBridge.class);
+        this.logger = componentManager.lookup(WikiImporterLogger.class);
+    }
+
+    /**
+     * @param checkpointJournal the journal recording the saved pages, <tt>null</tt> if none
+     */
+    public void setCheckpointJournal(MediaWikiCheckpointJournal checkpointJournal)
+    {
+        this.checkpointJournal = checkpointJournal;
+    }
+
+    /**
+     * Saves the page, the errors being logged rather than thrown.
+     * 
+     * @see org.xwiki.wikiimporter.internal.mediawiki.MediaWikiPageSink#addWikiPage(
+     *      org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage)
+     */
+    public void addWikiPage(MediaWikiPage page)
+    {
+        boolean saved;
+        try {
+            this.docBridge.addWikiPage(page, this.params);
+            saved = true;
+        } catch (Exception e) {
+            // The errors of the store are often transient: the page is recorded as failed rather than committed, so
+            // that resuming the import saves it again.
+            this.logger.error("Failed to create the page " + page.getId() + ": " + e.getMessage(), true);
+            saved = false;
+        }
+
+        // The pages skipped on purpose by the bridge are committed too.
+        record(page, saved);
+    }
+
+    private void record(MediaWikiPage page, boolean saved)
+    {
+        if (this.checkpointJournal != null) {
+            try {
+                if (saved) {
+                    this.checkpointJournal.commit(page);
+                } else {
+                    this.checkpointJournal.fail(page);
+                }
+            } catch (IOException e) {
+                this.logger.error("Failed to write the checkpoint journal: " + e.getMessage(), true);
+            }
+        }
+    }
+}
@@ -0,0 +1,38 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import org.xwiki.wikiimporter.importer.WikiImporterException;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+
+/**
+ * Receives the pages completed by a {@link MediaWikiImporterListener}. By default the listener saves them right away
+ * through a {@link MediaWikiPageSaver}.
+ * 
+ * @version $Id$
+ */
+public interface MediaWikiPageSink
+{
+    /**
+     * @param page the completely parsed page
+     * @throws WikiImporterException if the page can't be handled
+     */
+    void addWikiPage(MediaWikiPage page) throws WikiImporterException;
+}
@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Size bounded cache of the link references converted by {@link MediaWikiContentConverter}, keyed by the raw
+ * MediaWiki reference. The least recently used references are evicted first. The conversion only depends on the
+ * reference and on the import parameters, so a cache must not be shared by two imports. It can be used from any
+ * thread.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiReferenceCache
+{
+    /**
+     * The result of the conversion of a MediaWiki link reference.
+     */
+    public static class Entry
+    {
+        private final String reference;
+
+        private final String queryString;
+
+        private final String attachmentName;
+
+        private final boolean missingPage;
+
+        /**
+         * @param reference the XWiki reference, <tt>null</tt> if the MediaWiki reference is kept as is
+         * @param queryString the query string of the XWiki reference, <tt>null</tt> if none
+         * @param attachmentName the name of the attachment the reference points to, <tt>null</tt> if none
+         * @param missingPage <tt>true</tt> if the reference points to a page which isn't imported
+         */
+        public Entry(String reference, String queryString, String attachmentName, boolean missingPage)
+        {
+            this.reference = reference;
+            this.queryString = queryString;
+            this.attachmentName = attachmentName;
+            this.missingPage = missingPage;
+        }
+
+        /**
+         * @return the XWiki reference, <tt>null</tt> if the MediaWiki reference is kept as is
+         */
+        public String getReference()
+        {
+            return this.reference;
+        }
+
+        /**
+         * @return the query string of the XWiki reference, <tt>null</tt> if none
+         */
+        public String getQueryString()
+        {
+            return this.queryString;
+        }
+
+        /**
+         * @return the name of the attachment the reference points to, <tt>null</tt> if none
+         */
+        public String getAttachmentName()
+        {
+            return this.attachmentName;
+        }
+
+        /**
+         * @return <tt>true</tt> if the reference points to a page which isn't imported
+         */
+        public boolean isMissingPage()
+        {
+            return this.missingPage;
+        }
+    }
+
+    private final Map<String, Entry> entries;
+
+    private long hits;
+
+    private long misses;
+
+    /**
+     * @param maxSize the maximum number of references kept in the cache
+     */
+    public MediaWikiReferenceCache(final int maxSize)
+    {
+        this.entries = new LinkedHashMap<String, Entry>(16, 0.75f, true)
+        {
+            private static final long serialVersionUID = 1L;
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, Entry> eldest)
+            {
+                return size() > maxSize;
+            }
+        };
+    }
+
+    /**
+     * @param mediaWikiReference the raw MediaWiki reference
+     * @return the cached conversion of the reference, <tt>null</tt> if the reference has to be converted
+     */
+    public synchronized Entry get(String mediaWikiReference)
+    {
+        Entry entry = this.entries.get(mediaWikiReference);
+        if (entry != null) {
+            this.hits++;
+        } else {
+            this.misses++;
+        }
+
+        return entry;
+    }
+
+    /**
+     * @param mediaWikiReference the raw MediaWiki reference
+     * @param entry the conversion of the reference
+     */
+    public synchronized void put(String mediaWikiReference, Entry entry)
+    {
+        this.entries.put(mediaWikiReference, entry);
+    }
+
+    /**
+     * @return the number of references found in the cache
+     */
+    public synchronized long getHits()
+    {
+        return this.hits;
+    }
+
+    /**
+     * @return the number of references which had to be converted
+     */
+    public synchronized long getMisses()
+    {
+        return this.misses;
+    }
+}
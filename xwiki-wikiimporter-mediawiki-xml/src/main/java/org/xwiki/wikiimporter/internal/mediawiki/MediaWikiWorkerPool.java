@@ -0,0 +1,242 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import java.util.Hashtable;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.context.Execution;
+import org.xwiki.context.ExecutionContext;
+import org.xwiki.context.ExecutionContextManager;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+
+/**
+ * Fixed size pool of import worker threads. Each worker thread gets its own execution context, initialized from the
+ * context of the thread which created the pool, so that it can access the wiki. Submitting a task blocks while the
+ * backlog is full, which throttles the producer to the pace of the workers.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiWorkerPool
+{
+    /**
+     * The key of the XWiki context in the execution context.
+     */
+    private static final String XWIKICONTEXT_KEY = "xwikicontext";
+
+    /**
+     * Entries of the XWiki context bound to the thread which created them (database session and transaction).
+     */
+    private static final String[] THREAD_BOUND_KEYS = {"hibsession", "hibtransaction"};
+
+    private final ThreadPoolExecutor executor;
+
+    private final Semaphore slots;
+
+    private final Execution execution;
+
+    private final ExecutionContextManager contextManager;
+
+    private final Object xwikiContext;
+
+    private final WikiImporterLogger logger;
+
+    private volatile Throwable failure;
+
+    /**
+     * @param componentManager the component manager
+     * @param name the name of the pool, used to name the threads
+     * @param threads the number of worker threads
+     * @param backlog the number of submitted tasks allowed to wait for a worker
+     * @throws ComponentLookupException if the execution components can't be found
+     */
+    public MediaWikiWorkerPool(ComponentManager componentManager, final String name, int threads, int backlog)
+        throws ComponentLookupException
+    {
+        this.execution = componentManager.lookup(Execution.class);
+        this.contextManager = componentManager.lookup(ExecutionContextManager.class);
+        this.logger = componentManager.lookup(WikiImporterLogger.class);
+
+        ExecutionContext parentContext = this.execution.getContext();
+        this.xwikiContext = parentContext != null ? parentContext.getProperty(XWIKICONTEXT_KEY) : null;
+
+        this.slots = new Semaphore(threads + backlog);
+        this.executor =
+            new ThreadPoolExecutor(threads, threads, 0L, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<Runnable>(),
+                new ThreadFactory()
+                {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    public Thread newThread(final Runnable runnable)
+                    {
+                        Thread thread = new Thread(new Runnable()
+                        {
+                            public void run()
+                            {
+                                runWithContext(runnable);
+                            }
+                        }, name + " " + this.count.incrementAndGet());
+                        thread.setDaemon(true);
+
+                        return thread;
+                    }
+                });
+    }
+
+    /**
+     * @return the number of available processors, the default number of threads of the pools
+     */
+    public static int getDefaultThreads()
+    {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Submits a task, waiting for room in the backlog if needed. Tasks are not executed anymore once a task failed.
+     * 
+     * @param task the task to execute
+     * @throws MediaWikiImporterException if interrupted while waiting
+     */
+    public void submit(final Runnable task) throws MediaWikiImporterException
+    {
+        try {
+            this.slots.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MediaWikiImporterException("Interrupted while waiting for a worker", e);
+        }
+
+        execute(task);
+    }
+
+    /**
+     * Submits a task only if there's room in the backlog, for the tasks which may be skipped rather than wait.
+     * 
+     * @param task the task to execute
+     * @return <tt>true</tt> if the task was submitted, <tt>false</tt> if the backlog is full
+     */
+    public boolean trySubmit(Runnable task)
+    {
+        if (!this.slots.tryAcquire()) {
+            return false;
+        }
+
+        execute(task);
+
+        return true;
+    }
+
+    private void execute(final Runnable task)
+    {
+        try {
+            this.executor.execute(new Runnable()
+            {
+                public void run()
+                {
+                    try {
+                        if (failure == null) {
+                            task.run();
+                        }
+                    } catch (Throwable e) {
+                        fail(e);
+                    } finally {
+                        slots.release();
+                    }
+                }
+            });
+        } catch (RuntimeException e) {
+            this.slots.release();
+            throw e;
+        }
+    }
+
+    /**
+     * @return <tt>true</tt> if a task failed
+     */
+    public boolean hasFailed()
+    {
+        return this.failure != null;
+    }
+
+    /**
+     * Waits for all the submitted tasks to complete and stops the worker threads.
+     * 
+     * @throws MediaWikiImporterException if one of the tasks failed or if interrupted while waiting
+     */
+    public void shutdown() throws MediaWikiImporterException
+    {
+        this.executor.shutdown();
+        try {
+            while (!this.executor.awaitTermination(1, TimeUnit.SECONDS)) {
+                // Wait for the tasks to complete.
+            }
+        } catch (InterruptedException e) {
+            this.executor.shutdownNow();
+            Thread.currentThread().interrupt();
+            throw new MediaWikiImporterException("Interrupted while waiting for the workers", e);
+        }
+
+        if (this.failure != null) {
+            throw new MediaWikiImporterException("Import worker failed", this.failure);
+        }
+    }
+
+    private synchronized void fail(Throwable e)
+    {
+        if (this.failure == null) {
+            this.failure = e;
+            this.logger.error("Import worker failed: " + e.getMessage(), false);
+        }
+    }
+
+    private void runWithContext(Runnable runnable)
+    {
+        try {
+            ExecutionContext context = new ExecutionContext();
+            if (this.xwikiContext instanceof Hashtable) {
+                // The XWiki context can't be shared between threads, give a copy to each worker without the entries
+                // bound to the parent thread.
+                Hashtable< ? , ? > xwikiContextCopy =
+                    (Hashtable< ? , ? >) ((Hashtable< ? , ? >) this.xwikiContext).clone();
+                for (String key : THREAD_BOUND_KEYS) {
+                    xwikiContextCopy.remove(key);
+                }
+                context.setProperty(XWIKICONTEXT_KEY, xwikiContextCopy);
+            }
+            this.execution.setContext(context);
+            this.contextManager.initialize(context);
+        } catch (Exception e) {
+            fail(e);
+        }
+
+        try {
+            runnable.run();
+        } finally {
+            this.execution.removeContext();
+        }
+    }
+}
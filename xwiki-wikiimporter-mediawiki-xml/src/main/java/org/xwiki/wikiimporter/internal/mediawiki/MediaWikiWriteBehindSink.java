@@ -0,0 +1,174 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki;
+
+import org.xwiki.component.manager.ComponentLookupException;
+import org.xwiki.component.manager.ComponentManager;
+import org.xwiki.wikiimporter.importer.WikiImporterException;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+import org.xwiki.wikiimporter.wiki.WikiPageRevision;
+
+/**
+ * Write-behind queue between the listener reading the dump and the document bridge: the completed pages are saved by
+ * dedicated writer threads while the dump keeps being read. The queue is bounded both in pages and in bytes of
+ * MediaWiki content, the listener waiting for the writers when either bound is reached. A page bigger than the whole
+ * byte budget is only queued once the queue is empty. The revisions of a page are saved together, by a single writer,
+ * but the pages themselves may be saved out of order.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiWriteBehindSink implements MediaWikiPageSink
+{
+    /**
+     * The number of pages queued when the parameters don't say.
+     */
+    public static final int DEFAULT_QUEUE_PAGES = 64;
+
+    /**
+     * The number of megabytes of MediaWiki content queued when the parameters don't say.
+     */
+    public static final int DEFAULT_QUEUE_MEGABYTES = 64;
+
+    private static final long MEGABYTE = 1024L * 1024L;
+
+    private final MediaWikiPageSaver pageSaver;
+
+    private final WikiImporterLogger logger;
+
+    private final MediaWikiWorkerPool writerPool;
+
+    private final long maxQueuedBytes;
+
+    /**
+     * The bytes of MediaWiki content of the pages queued or being saved.
+     */
+    private long queuedBytes;
+
+    /**
+     * @param componentManager the component manager
+     * @param params the import parameters, which define the number of writer threads and the size of the queue
+     * @throws ComponentLookupException if the document bridge or the worker components can't be found
+     */
+    public MediaWikiWriteBehindSink(ComponentManager componentManager, MediaWikiImportParameters params)
+        throws ComponentLookupException
+    {
+        this.pageSaver = new MediaWikiPageSaver(componentManager, params);
+        this.logger = componentManager.lookup(WikiImporterLogger.class);
+
+        int threads = params.getSaveThreads() > 0 ? params.getSaveThreads() : MediaWikiWorkerPool.getDefaultThreads();
+        int queuePages = params.getWriteQueuePages() > 0 ? params.getWriteQueuePages() : DEFAULT_QUEUE_PAGES;
+        this.writerPool = new MediaWikiWorkerPool(componentManager, "MediaWiki writer", threads, queuePages);
+
+        int queueMegabytes =
+            params.getWriteQueueMegabytes() > 0 ? params.getWriteQueueMegabytes() : DEFAULT_QUEUE_MEGABYTES;
+        this.maxQueuedBytes = queueMegabytes * MEGABYTE;
+    }
+
+    /**
+     * @param checkpointJournal the journal recording the saved pages, <tt>null</tt> if none
+     */
+    public void setCheckpointJournal(MediaWikiCheckpointJournal checkpointJournal)
+    {
+        this.pageSaver.setCheckpointJournal(checkpointJournal);
+    }
+
+    /**
+     * Queues the page for a writer thread, waiting while the queue is full.
+     * 
+     * @see org.xwiki.wikiimporter.internal.mediawiki.MediaWikiPageSink#addWikiPage(
+     *      org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage)
+     */
+    public void addWikiPage(final MediaWikiPage page) throws WikiImporterException
+    {
+        if (this.writerPool.hasFailed()) {
+            throw new MediaWikiImporterException("The page writers failed, see the import log");
+        }
+
+        final WikiImporterLogger.Log pageLog = this.logger.getPageLog();
+        final long size = getSize(page);
+        reserve(size);
+        try {
+            this.writerPool.submit(new Runnable()
+            {
+                public void run()
+                {
+                    logger.setPageLog(pageLog);
+                    try {
+                        pageSaver.addWikiPage(page);
+                    } finally {
+                        release(size);
+                    }
+                }
+            });
+        } catch (MediaWikiImporterException e) {
+            release(size);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the queued pages to be saved and stops the writer threads.
+     * 
+     * @throws MediaWikiImporterException if a writer failed or if interrupted while waiting
+     */
+    public void close() throws MediaWikiImporterException
+    {
+        this.writerPool.shutdown();
+    }
+
+    /**
+     * Waits until the content of the page fits in the byte budget of the queue.
+     */
+    private synchronized void reserve(long size) throws MediaWikiImporterException
+    {
+        try {
+            while (this.queuedBytes > 0 && this.queuedBytes + size > this.maxQueuedBytes) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new MediaWikiImporterException("Interrupted while waiting for the page writers", e);
+        }
+        this.queuedBytes += size;
+    }
+
+    private synchronized void release(long size)
+    {
+        this.queuedBytes -= size;
+        notifyAll();
+    }
+
+    /**
+     * @return the bytes taken by the MediaWiki content of the revisions of the page, two per character
+     */
+    private long getSize(MediaWikiPage page)
+    {
+        long size = 0;
+        for (WikiPageRevision revision : page.getRevisions()) {
+            String content = revision.getOriginalContent();
+            if (content != null) {
+                size += content.length() * 2L;
+            }
+        }
+
+        return size;
+    }
+}
@@ -19,16 +19,22 @@
  */
 package org.xwiki.wikiimporter.internal.mediawiki;
 
-import java.io.StringReader;
+import java.io.IOException;
+import java.io.Writer;
 import java.util.Stack;
 
 import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
 import org.xml.sax.SAXException;
 import org.xml.sax.helpers.DefaultHandler;
 import org.xwiki.component.manager.ComponentLookupException;
 import org.xwiki.component.manager.ComponentManager;
-import org.xwiki.rendering.parser.StreamParser;
 import org.xwiki.rendering.renderer.PrintRendererFactory;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPageFilter;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiNamespaces;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpRevision;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpUpload;
 
 /**
  * Call back events for MediaWiki XML parser ( SAX Parser ).
@@ -45,16 +51,89 @@ public class MediaWikiXmlHandler extends DefaultHandler
 
     protected PrintRendererFactory plainRendererFactory;
 
-    private StreamParser mediawikiParser;
+    /**
+     * Fires the events of the buffered revision when only the last revision is imported.
+     */
+    private MediaWikiPageProcessor processor;
+
+    /**
+     * The raw revision being read when only the last revision is imported.
+     */
+    private MediaWikiDumpRevision pendingRevision;
+
+    /**
+     * The last raw revision of the current page when only the last revision is imported.
+     */
+    private MediaWikiDumpRevision lastRevision;
+
+    /**
+     * Rejects pages before their revisions are read, <tt>null</tt> to import all the pages.
+     */
+    private MediaWikiDumpPageFilter pageFilter;
+
+    /**
+     * The title, namespace and id of the current page, until the page is accepted or rejected.
+     */
+    private MediaWikiDumpPage pageHeader;
+
+    /**
+     * The namespaces declared in the siteinfo of the dump.
+     */
+    private MediaWikiNamespaces namespaces = new MediaWikiNamespaces();
+
+    /**
+     * The key of the namespace declaration being read.
+     */
+    private String namespaceKey;
+
+    /**
+     * Whether the current page has been rejected by the filter.
+     */
+    private boolean skipPage;
+
+    /**
+     * The upload being read.
+     */
+    private MediaWikiDumpUpload upload;
+
+    /**
+     * Decodes the base64 content of the upload being read, chunk by chunk, instead of buffering it.
+     */
+    private Writer uploadContent;
 
     public MediaWikiXmlHandler(ComponentManager componentManager, MediaWikiImporterListener listener)
         throws ComponentLookupException
     {
-        this.mediawikiParser = componentManager.lookup(StreamParser.class, "mediawiki/1.0");
-
         this.listener = listener;
     }
 
+    /**
+     * Only the last revision is saved when the history isn't preserved, so the raw revisions can be buffered and only
+     * the last one handed to the listener, once per page.
+     * 
+     * @param componentManager the component manager
+     * @param listener the listener to fire the events on
+     * @param lastRevisionOnly <tt>true</tt> to fire the events of the last revision of each page only
+     * @throws ComponentLookupException if the components needed by the handler can't be found
+     */
+    public MediaWikiXmlHandler(ComponentManager componentManager, MediaWikiImporterListener listener,
+        boolean lastRevisionOnly) throws ComponentLookupException
+    {
+        this(componentManager, listener);
+
+        if (lastRevisionOnly) {
+            this.processor = new MediaWikiPageProcessor(listener);
+        }
+    }
+
+    /**
+     * @param pageFilter the filter deciding which pages are imported, the revisions of the rejected pages being ignored
+     */
+    public void setPageFilter(MediaWikiDumpPageFilter pageFilter)
+    {
+        this.pageFilter = pageFilter;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -63,7 +142,15 @@ public class MediaWikiXmlHandler extends DefaultHandler
     @Override
     public void characters(char[] ch, int start, int length) throws SAXException
     {
-        this.strBuf.append(ch, start, length);
+        if (this.uploadContent != null) {
+            try {
+                this.uploadContent.write(ch, start, length);
+            } catch (IOException e) {
+                throw new SAXException("Failed to decode the content of the upload", e);
+            }
+        } else if (!this.skipPage) {
+            this.strBuf.append(ch, start, length);
+        }
     }
 
     /**
@@ -75,10 +162,42 @@ public class MediaWikiXmlHandler extends DefaultHandler
     @Override
     public void startElement(String uri, String localName, String qName, Attributes attributes) throws SAXException
     {
+        if (this.skipPage) {
+            return;
+        }
+
         if (MediaWikiConstants.PAGE_TAG.equals(qName)) {
-            this.listener.beginWikiPage();
+            // The page events are fired once the page header is read and the page accepted.
+            this.pageHeader = new MediaWikiDumpPage();
+        } else if (MediaWikiConstants.NAMESPACE_DECLARATION_TAG.equals(qName)) {
+            this.namespaceKey = attributes.getValue(MediaWikiConstants.NAMESPACE_KEY_ATTRIBUTE);
+        } else if (this.pageHeader != null && MediaWikiConstants.REDIRECT_TAG.equals(qName)) {
+            this.pageHeader.setRedirect(attributes.getValue(MediaWikiConstants.REDIRECT_TITLE_ATTRIBUTE));
         } else if (MediaWikiConstants.PAGE_REVISION_TAG.equals(qName)) {
-            this.listener.beginWikiPageRevision();
+            if (this.pageHeader != null && !acceptPage()) {
+                this.skipPage = true;
+                return;
+            }
+
+            if (this.processor != null) {
+                this.pendingRevision = new MediaWikiDumpRevision();
+            } else {
+                this.listener.beginWikiPageRevision();
+            }
+        } else if (MediaWikiConstants.UPLOAD_TAG.equals(qName)) {
+            if (this.pageHeader != null && !acceptPage()) {
+                this.skipPage = true;
+                return;
+            }
+
+            this.upload = new MediaWikiDumpUpload();
+        } else if (this.upload != null && MediaWikiConstants.UPLOAD_CONTENTS_TAG.equals(qName)
+            && MediaWikiConstants.BASE64_ENCODING.equals(attributes.getValue(MediaWikiConstants.ENCODING_ATTRIBUTE))) {
+            try {
+                this.uploadContent = this.upload.openContent();
+            } catch (IOException e) {
+                throw new SAXException("Failed to create the file of the upload", e);
+            }
         }
 
         // Set Current Element
@@ -95,6 +214,38 @@ public class MediaWikiXmlHandler extends DefaultHandler
     @Override
     public void endElement(String uri, String localName, String qName) throws SAXException
     {
+        if (this.skipPage) {
+            this.skipPage = !MediaWikiConstants.PAGE_TAG.equals(qName);
+            return;
+        }
+
+        if (this.namespaceKey != null && MediaWikiConstants.NAMESPACE_DECLARATION_TAG.equals(qName)) {
+            this.namespaces.addNamespace(this.namespaceKey, this.strBuf.toString().trim());
+            this.namespaceKey = null;
+            this.currElement.pop();
+            return;
+        }
+
+        if (this.upload != null) {
+            endUploadElement(qName);
+            return;
+        }
+
+        if (this.pageHeader != null) {
+            if (!MediaWikiConstants.PAGE_TAG.equals(qName)) {
+                readPageHeader();
+                return;
+            } else if (!acceptPage()) {
+                // Page without revisions.
+                return;
+            }
+        }
+
+        if (this.pendingRevision != null) {
+            bufferRevision(qName);
+            return;
+        }
+
         if (MediaWikiConstants.MW_PROPERTIES.contains(currElement.peek())) {
             this.listener.onProperty(currElement.pop(), strBuf.toString());
         }
@@ -111,20 +262,123 @@ public class MediaWikiXmlHandler extends DefaultHandler
         }
 
         if (MediaWikiConstants.PAGE_TAG.equals(qName)) {
+            if (this.lastRevision != null) {
+                this.processor.processRevision(this.lastRevision);
+                this.lastRevision = null;
+            }
             this.listener.endWikiPage();
         } else if (MediaWikiConstants.PAGE_REVISION_TAG.equals(qName)) {
             this.listener.endWikiPageRevision();
         }
     }
 
-    private void parseText(StringBuilder str) throws MediaWikiImporterException
+    /**
+     * Stores the raw value of the revision element ending, the superseded revision being released at the end of the
+     * revision.
+     */
+    private void bufferRevision(String qName)
     {
-        try {
-            String currentMediaWikiContent = str.toString();
-            this.listener.setCurrentMediaWikiContent(currentMediaWikiContent);
-            this.mediawikiParser.parse(new StringReader(currentMediaWikiContent), listener);
-        } catch (Exception e) {
-            throw new MediaWikiImporterException("Unable to parse page content", e);
+        String element = this.currElement.pop();
+        String value = this.strBuf.toString();
+
+        if (MediaWikiConstants.PAGE_REVISION_TAG.equals(qName)) {
+            this.lastRevision = this.pendingRevision;
+            this.pendingRevision = null;
+        } else if (MediaWikiConstants.VERSION_TAG.equals(element)) {
+            // The contributor id comes after the revision id.
+            if (this.pendingRevision.getId() == null) {
+                this.pendingRevision.setId(value);
+            }
+        } else if (MediaWikiConstants.TIMESTAMP_TAG.equals(element)) {
+            this.pendingRevision.setTimestamp(value);
+        } else if (MediaWikiConstants.AUTHOR_TAG.equals(element)) {
+            this.pendingRevision.setAuthor(value);
+        } else if (MediaWikiConstants.IS_MINOR_TAG.equals(element)) {
+            this.pendingRevision.setMinor(true);
+        } else if (MediaWikiConstants.COMMENT_TAG.equals(element)) {
+            this.pendingRevision.setComment(value);
+        } else if (MediaWikiConstants.TEXT_CONTENT_TAG.equals(element)) {
+            this.pendingRevision.setText(value);
         }
     }
+
+    /**
+     * Reads the file name and the content of the upload, which is handed to the listener at its end by the URI of its
+     * temporary file.
+     */
+    private void endUploadElement(String qName) throws SAXException
+    {
+        this.currElement.pop();
+
+        if (MediaWikiConstants.UPLOAD_FILENAME_TAG.equals(qName)) {
+            this.upload.setFileName(this.strBuf.toString().trim());
+        } else if (this.uploadContent != null && MediaWikiConstants.UPLOAD_CONTENTS_TAG.equals(qName)) {
+            try {
+                this.uploadContent.close();
+            } catch (IOException e) {
+                throw new SAXException("Failed to decode the content of the upload", e);
+            } finally {
+                this.uploadContent = null;
+            }
+        } else if (MediaWikiConstants.UPLOAD_TAG.equals(qName)) {
+            if (this.upload.isComplete()) {
+                this.listener.onAttachmentRevision(this.upload.getFileName(), new InputSource(this.upload.getFile()
+                    .toURI().toString()));
+            } else {
+                this.upload.delete();
+            }
+            this.upload = null;
+        }
+    }
+
+    /**
+     * Stores the title, namespace and id of the page until it's decided whether the page is imported.
+     */
+    private void readPageHeader()
+    {
+        String element = this.currElement.peek();
+        if (MediaWikiConstants.PAGE_TITLE_TAG.equals(element)) {
+            this.pageHeader.setTitle(this.strBuf.toString());
+            this.currElement.pop();
+        } else if (MediaWikiConstants.VERSION_TAG.equals(element)) {
+            this.pageHeader.setId(this.strBuf.toString());
+            this.currElement.pop();
+        } else if (MediaWikiConstants.NAMESPACE_TAG.equals(element)) {
+            this.pageHeader.setNamespace(this.strBuf.toString());
+        }
+    }
+
+    /**
+     * Resolves the namespace of the page and fires the events of the page header if the filter accepts the page.
+     * 
+     * @return <tt>true</tt> if the page is accepted
+     */
+    private boolean acceptPage()
+    {
+        MediaWikiDumpPage page = this.pageHeader;
+        this.pageHeader = null;
+        this.namespaces.resolve(page);
+        if (this.pageFilter != null && !this.pageFilter.accept(page)) {
+            return false;
+        }
+
+        this.listener.beginWikiPage();
+        if (page.getTitle() != null) {
+            this.listener.onProperty(MediaWikiConstants.PAGE_TITLE_TAG, page.getTitle());
+        }
+        if (page.getNamespacePrefix() != null) {
+            this.listener.onProperty(MediaWikiConstants.NAMESPACE_PREFIX_PROPERTY, page.getNamespacePrefix());
+        }
+        if (page.getId() != null) {
+            this.listener.onProperty(MediaWikiConstants.VERSION_TAG, page.getId());
+        }
+
+        return true;
+    }
+
+    private void parseText(StringBuilder str) throws MediaWikiImporterException
+    {
+        // The content is parsed when the revision is written.
+        this.listener.setCurrentMediaWikiContent(str.toString());
+    }
 }
@@ -20,11 +20,18 @@
 package org.xwiki.wikiimporter.internal.mediawiki;
 
 import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Collections;
+import java.util.HashSet;
 import java.util.Map;
+import java.util.Set;
 
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
 
+import org.apache.commons.io.IOUtils;
+import org.apache.commons.lang.StringUtils;
 import org.xwiki.component.annotation.Component;
 import org.xwiki.component.annotation.Requirement;
 import org.xwiki.component.manager.ComponentLookupException;
@@ -33,6 +40,13 @@ import org.xwiki.wikiimporter.bridge.WikiImporterDocumentBridge;
 import org.xwiki.wikiimporter.importer.AbstractWikiImporter;
 import org.xwiki.wikiimporter.importer.WikiImporterException;
 import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPageFilter;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpSplitter;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpStreams;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiMultistreamDump;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiTitleIndex;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiXmlReader;
 import org.xwiki.wikiimporter.listener.WikiImporterListener;
 import org.xwiki.wikiimporter.type.WikiImporterType;
 
@@ -49,6 +63,16 @@ public class MediaWikiXmlImporter extends AbstractWikiImporter
      */
     private static final String DESCRIPTION = "Imports MediaWiki XML dump into XWiki.";
 
+    /**
+     * The number of attachment files and contents remembered to deduplicate the attachments.
+     */
+    private static final int ATTACHMENT_STORE_SIZE = 100000;
+
+    /**
+     * The number of attachment files read at the same time by the prefetcher, reads being mostly waits for the disk.
+     */
+    private static final int ATTACHMENT_PREFETCH_THREADS = 4;
+
     @Requirement
     private ComponentManager componentManager;
 
@@ -92,22 +116,64 @@ public class MediaWikiXmlImporter extends AbstractWikiImporter
         // Populating MediaWikiParameters.
         MediaWikiImportParameters mxParameters = populateParameterBean(parameters);
 
-        try {
-            MediaWikiImporterListener mwXmlListener =
-                new MediaWikiImporterListener(this.componentManager, mxParameters);
-            importWiki(mxParameters, mwXmlListener);
-        } catch (ComponentLookupException e) {
-            throw new WikiImporterException("Failed to create MediaWikiImporterListener", e);
-        }
+        importWiki(mxParameters, null);
     }
 
+    /**
+     * @param params the import parameters
+     * @param listener the listener to fire the events on, or <tt>null</tt> to use default listeners, which allows
+     *            parallel import modes
+     */
     private void importWiki(MediaWikiImportParameters params, WikiImporterListener listener)
         throws WikiImporterException
     {
         this.logger.info("Import process started.", false);
 
-        this.parseWikiDumpXml(params,  (MediaWikiImporterListener) listener);
+        // Fail before reading the dump if the macro mapping is invalid, it's shared by all the parsers afterwards.
+        MediaWikiMacroMapping.getMapping(params.getMacroMappingPath());
 
+        MediaWikiImportIndexes indexes = createIndexes(params);
+        MediaWikiCheckpointJournal journal = openCheckpointJournal(params);
+        try {
+            if (journal != null) {
+                retryFailedPages(params, (MediaWikiImporterListener) listener, journal, indexes);
+            }
+
+            if (listener == null && StringUtils.isNotEmpty(params.getMultistreamIndexPath())) {
+                importMultistreamDump(params, journal, indexes);
+            } else if (listener == null && params.getSplitDump() && !isCompressed(params)) {
+                importSplitDump(params, journal, indexes);
+            } else if (listener == null && params.getPipeline()) {
+                importWithPipeline(params, journal, indexes);
+            } else {
+                MediaWikiImporterListener mwXmlListener = (MediaWikiImporterListener) listener;
+                if (mwXmlListener == null) {
+                    mwXmlListener = createListener(params, journal, indexes);
+                } else {
+                    mwXmlListener.setCheckpointJournal(journal);
+                    mwXmlListener.setIndexes(indexes);
+                }
+                if (params.getWriteBehind()) {
+                    parseWithWriteBehind(params, mwXmlListener, journal);
+                } else {
+                    this.parseWikiDumpXml(params, mwXmlListener, journal);
+                }
+            }
+        } finally {
+            if (journal != null) {
+                journal.close();
+            }
+            if (indexes.getAttachmentPrefetcher() != null) {
+                indexes.getAttachmentPrefetcher().shutdown();
+                this.logger.info("Prefetched " + indexes.getAttachmentPrefetcher().getHits() + " attachments.",
+                    false);
+            }
+        }
+
+        if (indexes.getAttachmentStore() != null) {
+            this.logger.info("Linked " + indexes.getAttachmentStore().getDuplicates()
+                + " duplicate attachments to the first stored copy.", false);
+        }
         this.logger.info("Import process completed Successfully.", false);
         this.docBridge.log(this.logger.getAllLogsAsString());
         this.logger.clearAllLogs();
@@ -123,6 +189,262 @@ public class MediaWikiXmlImporter extends AbstractWikiImporter
         return WikiImporterType.MEDIAWIKI_XML;
     }
 
+    /**
+     * @return a reader dropping the superseded revisions when the history isn't preserved, since only the last revision
+     *         is saved then, and skipping the pages which aren't imported
+     */
+    private MediaWikiXmlReader createReader(InputStream stream, MediaWikiImportParameters params)
+        throws MediaWikiImporterException
+    {
+        MediaWikiXmlReader reader = new MediaWikiXmlReader(stream);
+        reader.setLastRevisionOnly(!params.getPreserveHistory());
+        reader.setPageFilter(new MediaWikiPageFilter(params));
+
+        return reader;
+    }
+
+    /**
+     * Records in the journal that the page is going to be imported.
+     * 
+     * @return <tt>false</tt> if the page has already been imported by the import being resumed
+     */
+    private boolean beginPage(MediaWikiDumpPage page, MediaWikiCheckpointJournal journal, long streamOffset)
+    {
+        if (journal != null) {
+            if (journal.isCommitted(page.getId())) {
+                page.deleteUploads();
+
+                return false;
+            }
+            journal.begin(page.getId(), streamOffset >= 0 ? streamOffset : page.getOffset());
+        }
+
+        return true;
+    }
+
+    /**
+     * Imports again the pages which failed to be saved before the offset the import is resumed from, reading them by id
+     * from their offsets. The pages which failed after the resume offset are read again by the import itself.
+     * 
+     * @param params the import parameters
+     * @param listener the listener to fire the events on, <tt>null</tt> to use a default listener
+     * @param journal the checkpoint journal listing the failed pages and recording them once imported
+     * @param indexes the indexes shared by the listeners
+     * @throws MediaWikiImporterException in case of any errors reading the dump
+     */
+    private void retryFailedPages(MediaWikiImportParameters params, MediaWikiImporterListener listener,
+        MediaWikiCheckpointJournal journal, MediaWikiImportIndexes indexes) throws MediaWikiImporterException
+    {
+        Map<String, Long> failedPages = journal.getFailedPages();
+        if (failedPages.isEmpty()) {
+            return;
+        }
+
+        this.logger.info("Retrying the " + failedPages.size() + " pages which failed to be saved.", false);
+
+        MediaWikiImporterListener retryListener = listener;
+        if (retryListener == null) {
+            retryListener = createListener(params, journal, indexes);
+        } else {
+            retryListener.setCheckpointJournal(journal);
+            retryListener.setIndexes(indexes);
+        }
+
+        Set<String> remainingPages = new HashSet<String>(failedPages.keySet());
+        InputStream stream = null;
+        try {
+            MediaWikiPageProcessor processor = new MediaWikiPageProcessor(retryListener);
+            if (StringUtils.isNotEmpty(params.getMultistreamIndexPath())) {
+                // The offsets are the ones of the streams holding the pages.
+                MediaWikiMultistreamDump dump =
+                    new MediaWikiMultistreamDump(new File(params.getSrcPath()), new File(params
+                        .getMultistreamIndexPath()));
+                Set<Long> streamOffsets = new HashSet<Long>(failedPages.values());
+                for (int i = 0; i < dump.getStreamCount() && !remainingPages.isEmpty(); ++i) {
+                    if (streamOffsets.contains(dump.getStreamOffset(i))) {
+                        stream = dump.openStream(i);
+                        retryPages(stream, params, processor, journal, remainingPages, dump.getStreamOffset(i));
+                        IOUtils.closeQuietly(stream);
+                    }
+                }
+            } else {
+                // The failed pages are read in a single pass from the first one, the others being skipped unparsed.
+                stream = MediaWikiDumpStreams.openAt(new File(params.getSrcPath()), Collections.min(failedPages
+                    .values()));
+                retryPages(stream, params, processor, journal, remainingPages, -1);
+            }
+        } catch (Exception e) {
+            throw new MediaWikiImporterException("Failed to retry the pages which failed to be saved", e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Imports the given pages of the stream, stopping as soon as they've all been read.
+     * 
+     * @param remainingPages the ids of the pages to import, removed once imported
+     */
+    private void retryPages(InputStream stream, MediaWikiImportParameters params, MediaWikiPageProcessor processor,
+        MediaWikiCheckpointJournal journal, Set<String> remainingPages, long streamOffset) throws Exception
+    {
+        MediaWikiXmlReader reader = createReader(stream, params);
+        MediaWikiPageFilter pageFilter = new MediaWikiPageFilter(params);
+        pageFilter.setPageIds(remainingPages);
+        reader.setPageFilter(pageFilter);
+        try {
+            while (!remainingPages.isEmpty()) {
+                MediaWikiDumpPage page = reader.nextPage();
+                if (page == null) {
+                    break;
+                }
+                remainingPages.remove(page.getId());
+                if (beginPage(page, journal, streamOffset)) {
+                    processor.process(page);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    private void beginRange(MediaWikiCheckpointJournal journal, long offset)
+    {
+        if (journal != null) {
+            journal.beginRange(offset);
+        }
+    }
+
+    /**
+     * Releases a range of the dump held in flight once it's completely read. A range which failed is never released,
+     * so that the pages it didn't read are read again on resume.
+     */
+    private void endRange(MediaWikiCheckpointJournal journal, long offset)
+    {
+        if (journal != null) {
+            journal.endRange(offset);
+        }
+    }
+
+    private MediaWikiImporterListener createListener(MediaWikiImportParameters params,
+        MediaWikiCheckpointJournal journal, MediaWikiImportIndexes indexes) throws MediaWikiImporterException
+    {
+        try {
+            MediaWikiImporterListener listener = new MediaWikiImporterListener(this.componentManager, params);
+            listener.setCheckpointJournal(journal);
+            listener.setIndexes(indexes);
+
+            return listener;
+        } catch (ComponentLookupException e) {
+            throw new MediaWikiImporterException("Failed to create MediaWikiImporterListener", e);
+        }
+    }
+
+    /**
+     * @param params the import parameters
+     * @return the indexes asked by the parameters
+     * @throws MediaWikiImporterException in case of any errors building the indexes
+     */
+    private MediaWikiImportIndexes createIndexes(MediaWikiImportParameters params) throws MediaWikiImporterException
+    {
+        MediaWikiImportIndexes indexes = new MediaWikiImportIndexes();
+        if (params.getTitleIndex() || params.getSkipRedirects()) {
+            indexes.setTitleIndex(buildTitleIndex(params));
+        }
+        if (StringUtils.isNotBlank(params.getAttachmentSrcPath())) {
+            try {
+                // The attachment directory is only scanned if an attachment is looked up.
+                indexes.setAttachmentIndex(new MediaWikiAttachmentIndex(this.componentManager, params
+                    .getAttachmentSrcPath(), params.getAttachmentExcludeDirs()));
+                if (params.getAttachmentPrefetchBudget() > 0) {
+                    indexes.setAttachmentPrefetcher(new MediaWikiAttachmentPrefetcher(this.componentManager,
+                        ATTACHMENT_PREFETCH_THREADS, params.getAttachmentPrefetchBudget() * 1024L * 1024L));
+                }
+            } catch (ComponentLookupException e) {
+                throw new MediaWikiImporterException("Failed to create the attachment index", e);
+            }
+            if (params.getDeduplicateAttachments()) {
+                indexes.setAttachmentStore(new MediaWikiAttachmentStore(ATTACHMENT_STORE_SIZE, this.logger));
+            }
+        }
+
+        return indexes;
+    }
+
+    /**
+     * Reads the titles of the pages of the dump which are going to be imported, and all the redirects, without their
+     * revisions.
+     * 
+     * @param params the import parameters
+     * @return the index of the titles
+     * @throws MediaWikiImporterException in case of any errors reading the dump
+     */
+    private MediaWikiTitleIndex buildTitleIndex(MediaWikiImportParameters params) throws MediaWikiImporterException
+    {
+        final MediaWikiTitleIndex titleIndex = new MediaWikiTitleIndex();
+        final MediaWikiPageFilter pageFilter = new MediaWikiPageFilter(params);
+
+        InputStream stream = null;
+        try {
+            stream = MediaWikiDumpStreams.open(new File(params.getSrcPath()));
+            MediaWikiXmlReader reader = new MediaWikiXmlReader(stream);
+            titleIndex.setNamespaces(reader.getNamespaces());
+            // The filter gets the header of every page and rejects them all, so that their revisions are skipped.
+            reader.setPageFilter(new MediaWikiDumpPageFilter()
+            {
+                public boolean accept(MediaWikiDumpPage page)
+                {
+                    if (page.getRedirect() != null) {
+                        titleIndex.addRedirect(page.getTitle(), page.getRedirect());
+                    }
+                    if (pageFilter.accept(page)) {
+                        titleIndex.add(page.getTitle());
+                    }
+
+                    return false;
+                }
+            });
+            try {
+                reader.nextPage();
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Error while reading the titles of the MediaWiki XML Dump File", e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+
+        titleIndex.build();
+        this.logger.info("Indexed the titles of " + titleIndex.size() + " pages and " + titleIndex.getRedirectCount()
+            + " redirects.", false);
+
+        return titleIndex;
+    }
+
+    /**
+     * @return the checkpoint journal asked by the parameters, <tt>null</tt> if none
+     */
+    private MediaWikiCheckpointJournal openCheckpointJournal(MediaWikiImportParameters params)
+        throws MediaWikiImporterException
+    {
+        if (StringUtils.isEmpty(params.getCheckpointPath())) {
+            return null;
+        }
+
+        try {
+            MediaWikiCheckpointJournal journal =
+                new MediaWikiCheckpointJournal(new File(params.getCheckpointPath()), params.getResume());
+            if (journal.getResumeOffset() >= 0) {
+                this.logger.info("Resuming the import from offset " + journal.getResumeOffset() + ".", false);
+            }
+
+            return journal;
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Failed to open the checkpoint journal", e);
+        }
+    }
+
     private MediaWikiImportParameters populateParameterBean(Map<String, ? > paramsMap)
         throws MediaWikiImporterException
     {
@@ -137,25 +459,342 @@ public class MediaWikiXmlImporter extends AbstractWikiImporter
     }
 
     /**
-     * Parses MediaWiki XML using a SAX Parser
+     * Parses the dump on the calling thread while the pages are saved by the writer threads of a write-behind sink.
      * 
-     * @param xmlFilePath the absolute path to the XML file.
+     * @param params the import parameters
      * @param listener {@link WikiImporterListener} which listens to events generated by parser.
+     * @param journal the checkpoint journal to resume from and to record the pages into, <tt>null</tt> if none
+     * @throws MediaWikiImporterException in case of any errors parsing the XML file or saving the pages.
+     */
+    private void parseWithWriteBehind(MediaWikiImportParameters params, MediaWikiImporterListener listener,
+        MediaWikiCheckpointJournal journal) throws MediaWikiImporterException
+    {
+        MediaWikiWriteBehindSink sink;
+        try {
+            sink = new MediaWikiWriteBehindSink(this.componentManager, params);
+            sink.setCheckpointJournal(journal);
+        } catch (ComponentLookupException e) {
+            throw new MediaWikiImporterException("Failed to create the page writers", e);
+        }
+
+        listener.setPageSink(sink);
+        try {
+            parseWikiDumpXml(params, listener, journal);
+        } finally {
+            sink.close();
+            listener.setPageSink(null);
+        }
+        // The content is parsed by the writers, the statistics are only complete once they are done.
+        listener.getContentParser().logStatistics();
+    }
+
+    /**
+     * Parses MediaWiki XML using the pull reader, or the SAX Parser if asked in the parameters. Compressed dumps are
+     * decompressed while being parsed.
+     * 
+     * @param params the import parameters
+     * @param listener {@link WikiImporterListener} which listens to events generated by parser.
+     * @param journal the checkpoint journal to resume from and to record the pages into, <tt>null</tt> if none
      * @throws MediaWikiImporterException in case of any errors parsing the XML file.
      */
-    private void parseWikiDumpXml(MediaWikiImportParameters params, MediaWikiImporterListener listener)
-        throws MediaWikiImporterException
+    private void parseWikiDumpXml(MediaWikiImportParameters params, MediaWikiImporterListener listener,
+        MediaWikiCheckpointJournal journal) throws MediaWikiImporterException
     {
         String xmlFilePath = params.getSrcPath();
 
         File file = new File(xmlFilePath);
 
+        InputStream stream = null;
         try {
-            MediaWikiXmlHandler handler = new MediaWikiXmlHandler(this.componentManager, listener);
-            SAXParser saxParser = this.saxParserFactory.newSAXParser();
-            saxParser.parse(file, handler);
+            if (journal != null && params.getUseSaxParser()) {
+                this.logger.warn("Checkpoints are only supported by the StAX reader.", false);
+            }
+
+            stream = MediaWikiDumpStreams.openAt(file, journal != null ? journal.getResumeOffset() : 0);
+            parseWikiDumpXml(stream, params, listener, journal);
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Error while parsing the MediaWiki XML Dump File", e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * Parses MediaWiki XML from the given stream using the pull reader, or the SAX Parser if asked in the parameters.
+     * 
+     * @param stream the stream of the MediaWiki XML dump
+     * @param params the import parameters
+     * @param listener {@link WikiImporterListener} which listens to events generated by parser.
+     * @param journal the checkpoint journal, <tt>null</tt> if none
+     * @throws MediaWikiImporterException in case of any errors parsing the XML.
+     */
+    private void parseWikiDumpXml(InputStream stream, MediaWikiImportParameters params,
+        MediaWikiImporterListener listener, MediaWikiCheckpointJournal journal) throws MediaWikiImporterException
+    {
+        parseWikiDumpXml(stream, params, listener, journal, -1);
+    }
+
+    /**
+     * Parses MediaWiki XML from the given stream using the pull reader, or the SAX Parser if asked in the parameters.
+     * 
+     * @param stream the stream of the MediaWiki XML dump
+     * @param params the import parameters
+     * @param listener {@link WikiImporterListener} which listens to events generated by parser.
+     * @param journal the checkpoint journal, <tt>null</tt> if none
+     * @param streamOffset the offset to record in the journal for all the pages of the stream, -1 to record the offset
+     *            of each page
+     * @throws MediaWikiImporterException in case of any errors parsing the XML.
+     */
+    private void parseWikiDumpXml(InputStream stream, MediaWikiImportParameters params,
+        MediaWikiImporterListener listener, MediaWikiCheckpointJournal journal, long streamOffset)
+        throws MediaWikiImporterException
+    {
+        try {
+            if (params.getUseSaxParser()) {
+                MediaWikiXmlHandler handler =
+                    new MediaWikiXmlHandler(this.componentManager, listener, !params.getPreserveHistory());
+                handler.setPageFilter(new MediaWikiPageFilter(params));
+                SAXParser saxParser = this.saxParserFactory.newSAXParser();
+                saxParser.parse(stream, handler);
+            } else {
+                readWikiDumpXml(stream, params, listener, journal, streamOffset);
+            }
+            if (listener.getPageSink() == null) {
+                listener.getContentParser().logStatistics();
+            }
+        } catch (MediaWikiImporterException e) {
+            throw e;
         } catch (Exception e) {
             throw new MediaWikiImporterException("Error while parsing the MediaWiki XML Dump File", e);
         }
     }
+
+    /**
+     * Pulls the pages one by one from the dump and fires their events on the given listener.
+     * 
+     * @param stream the stream of the MediaWiki XML dump
+     * @param params the import parameters
+     * @param listener {@link WikiImporterListener} which listens to events generated by parser.
+     * @param journal the checkpoint journal, <tt>null</tt> if none
+     * @param streamOffset the offset to record in the journal for all the pages, -1 to record the offset of each page
+     * @throws Exception in case of any errors reading the dump.
+     */
+    private void readWikiDumpXml(InputStream stream, MediaWikiImportParameters params,
+        MediaWikiImporterListener listener, MediaWikiCheckpointJournal journal, long streamOffset) throws Exception
+    {
+        MediaWikiPageProcessor processor = new MediaWikiPageProcessor(listener);
+        MediaWikiXmlReader reader = createReader(stream, params);
+        try {
+            for (MediaWikiDumpPage page = reader.nextPage(); page != null; page = reader.nextPage()) {
+                if (beginPage(page, journal, streamOffset)) {
+                    processor.process(page);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+    }
+
+    /**
+     * Imports a multistream bzip2 dump: each stream listed in the index is decompressed and parsed by a worker with its
+     * own reader and listener.
+     * 
+     * @param params the import parameters
+     * @param journal the checkpoint journal, <tt>null</tt> if none
+     * @param indexes the indexes shared by the listeners
+     * @throws MediaWikiImporterException in case of any errors reading the dump
+     */
+    private void importMultistreamDump(final MediaWikiImportParameters params,
+        final MediaWikiCheckpointJournal journal, final MediaWikiImportIndexes indexes)
+        throws MediaWikiImporterException
+    {
+        final MediaWikiMultistreamDump dump;
+        try {
+            dump =
+                new MediaWikiMultistreamDump(new File(params.getSrcPath()), new File(params.getMultistreamIndexPath()));
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Failed to open the MediaWiki multistream dump", e);
+        }
+
+        this.logger.info("Importing " + dump.getStreamCount() + " streams in parallel.", false);
+
+        MediaWikiWorkerPool pool = createWorkerPool("MediaWiki stream importer", params);
+        try {
+            for (int i = 0; i < dump.getStreamCount() && !pool.hasFailed(); ++i) {
+                // Skip the streams already imported by the import being resumed.
+                if (journal != null && dump.getStreamOffset(i) < journal.getResumeOffset()) {
+                    continue;
+                }
+
+                // The streams are begun in order, the ones not submitted yet are all after the watermark.
+                final long streamOffset = dump.getStreamOffset(i);
+                beginRange(journal, streamOffset);
+                final int streamIndex = i;
+                pool.submit(new Runnable()
+                {
+                    public void run()
+                    {
+                        importStream(dump, streamIndex, params, journal, indexes);
+                        endRange(journal, streamOffset);
+                    }
+                });
+            }
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    /**
+     * Imports an uncompressed dump by splitting it into byte ranges of whole pages, each range being parsed by a worker
+     * with its own parser and listener.
+     * 
+     * @param params the import parameters
+     * @param journal the checkpoint journal, <tt>null</tt> if none
+     * @param indexes the indexes shared by the listeners
+     * @throws MediaWikiImporterException in case of any errors reading the dump
+     */
+    private void importSplitDump(final MediaWikiImportParameters params, final MediaWikiCheckpointJournal journal,
+        final MediaWikiImportIndexes indexes) throws MediaWikiImporterException
+    {
+        final MediaWikiDumpSplitter splitter;
+        final long[] boundaries;
+        try {
+            splitter = new MediaWikiDumpSplitter(new File(params.getSrcPath()));
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Failed to open the MediaWiki XML Dump File", e);
+        }
+
+        try {
+            int threads = getWorkerThreads(params);
+            boundaries = splitter.split(threads, journal != null ? journal.getResumeOffset() : 0);
+
+            this.logger.info("Importing " + (boundaries.length - 1) + " ranges of the dump in parallel.", false);
+
+            // All the ranges are in flight from the start, so that a range completed early doesn't move the watermark
+            // past the ranges waiting for a worker.
+            for (int i = 0; i + 1 < boundaries.length; ++i) {
+                beginRange(journal, boundaries[i]);
+            }
+
+            MediaWikiWorkerPool pool = createWorkerPool("MediaWiki range importer", params);
+            try {
+                for (int i = 0; i + 1 < boundaries.length && !pool.hasFailed(); ++i) {
+                    final int rangeIndex = i;
+                    pool.submit(new Runnable()
+                    {
+                        public void run()
+                        {
+                            importRange(splitter, boundaries[rangeIndex], boundaries[rangeIndex + 1], params,
+                                journal, indexes);
+                            endRange(journal, boundaries[rangeIndex]);
+                        }
+                    });
+                }
+            } finally {
+                pool.shutdown();
+            }
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Failed to split the MediaWiki XML Dump File", e);
+        } finally {
+            try {
+                splitter.close();
+            } catch (IOException e) {
+                getLogger().warn("Failed to close the MediaWiki XML Dump File", e);
+            }
+        }
+    }
+
+    private void importRange(MediaWikiDumpSplitter splitter, long start, long end, MediaWikiImportParameters params,
+        MediaWikiCheckpointJournal journal, MediaWikiImportIndexes indexes)
+    {
+        try {
+            parseWikiDumpXml(splitter.openRange(start, end), params, createListener(params, journal, indexes),
+                journal);
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to import the range " + start + "-" + end + " of the dump", e);
+        }
+    }
+
+    /**
+     * Reads the pages of the dump on the current thread and hands them to a {@link MediaWikiImportPipeline}.
+     * 
+     * @param params the import parameters
+     * @param journal the checkpoint journal, <tt>null</tt> if none
+     * @param indexes the indexes shared by the listeners
+     * @throws MediaWikiImporterException in case of any errors reading the dump
+     */
+    private void importWithPipeline(MediaWikiImportParameters params, MediaWikiCheckpointJournal journal,
+        MediaWikiImportIndexes indexes) throws MediaWikiImporterException
+    {
+        MediaWikiImportPipeline pipeline;
+        try {
+            pipeline = new MediaWikiImportPipeline(this.componentManager, params);
+            pipeline.setCheckpointJournal(journal);
+            pipeline.setIndexes(indexes);
+        } catch (ComponentLookupException e) {
+            throw new MediaWikiImporterException("Failed to create the import pipeline", e);
+        }
+
+        InputStream stream = null;
+        try {
+            stream =
+                MediaWikiDumpStreams.openAt(new File(params.getSrcPath()), journal != null ? journal
+                    .getResumeOffset() : 0);
+            MediaWikiXmlReader reader = createReader(stream, params);
+            try {
+                for (MediaWikiDumpPage page = reader.nextPage(); page != null; page = reader.nextPage()) {
+                    if (beginPage(page, journal, -1)) {
+                        pipeline.process(page);
+                    }
+                }
+            } finally {
+                reader.close();
+            }
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Error while reading the MediaWiki XML Dump File", e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+            pipeline.close();
+        }
+    }
+
+    private void importStream(MediaWikiMultistreamDump dump, int streamIndex, MediaWikiImportParameters params,
+        MediaWikiCheckpointJournal journal, MediaWikiImportIndexes indexes)
+    {
+        InputStream stream = null;
+        try {
+            stream = dump.openStream(streamIndex);
+            parseWikiDumpXml(stream, params, createListener(params, journal, indexes), journal,
+                dump.getStreamOffset(streamIndex));
+        } catch (Exception e) {
+            throw new RuntimeException("Failed to import the stream at offset " + dump.getStreamOffset(streamIndex), e);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    private MediaWikiWorkerPool createWorkerPool(String name, MediaWikiImportParameters params)
+        throws MediaWikiImporterException
+    {
+        int threads = getWorkerThreads(params);
+        try {
+            return new MediaWikiWorkerPool(this.componentManager, name, threads, threads);
+        } catch (ComponentLookupException e) {
+            throw new MediaWikiImporterException("Failed to create the import workers", e);
+        }
+    }
+
+    private boolean isCompressed(MediaWikiImportParameters params) throws MediaWikiImporterException
+    {
+        try {
+            return MediaWikiDumpStreams.isCompressed(new File(params.getSrcPath()));
+        } catch (IOException e) {
+            throw new MediaWikiImporterException("Failed to open the MediaWiki XML Dump File", e);
+        }
+    }
+
+    private int getWorkerThreads(MediaWikiImportParameters params)
+    {
+        return params.getWorkerThreads() > 0 ? params.getWorkerThreads() : MediaWikiWorkerPool.getDefaultThreads();
+    }
 }
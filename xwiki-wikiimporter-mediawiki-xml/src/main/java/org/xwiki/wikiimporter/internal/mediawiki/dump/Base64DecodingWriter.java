@@ -0,0 +1,129 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.Writer;
+
+/**
+ * Decodes the base64 characters written to it into an output stream as they come, so that the uploads of a dump are
+ * decoded chunk by chunk while the XML is parsed, without buffering their whole text. The white spaces and the other
+ * characters outside of the base64 alphabet are ignored, the padding ends the content.
+ * 
+ * @version $Id$
+ */
+public class Base64DecodingWriter extends Writer
+{
+    private static final byte[] VALUES = new byte[128];
+
+    static {
+        for (int i = 0; i < VALUES.length; ++i) {
+            VALUES[i] = -1;
+        }
+        String alphabet = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+        for (int i = 0; i < alphabet.length(); ++i) {
+            VALUES[alphabet.charAt(i)] = (byte) i;
+        }
+    }
+
+    private final OutputStream out;
+
+    /**
+     * The bits of the characters of the current group of 4 characters.
+     */
+    private int group;
+
+    private int groupLength;
+
+    private boolean padded;
+
+    private boolean closed;
+
+    /**
+     * @param out the stream receiving the decoded bytes, closed with the writer
+     */
+    public Base64DecodingWriter(OutputStream out)
+    {
+        this.out = out;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.Writer#write(char[], int, int)
+     */
+    @Override
+    public void write(char[] cbuf, int off, int len) throws IOException
+    {
+        for (int i = off; i < off + len && !this.padded; ++i) {
+            char c = cbuf[i];
+            if (c == '=') {
+                this.padded = true;
+            } else if (c < VALUES.length && VALUES[c] >= 0) {
+                this.group = (this.group << 6) | VALUES[c];
+                if (++this.groupLength == 4) {
+                    this.out.write(this.group >> 16);
+                    this.out.write(this.group >> 8);
+                    this.out.write(this.group);
+                    this.group = 0;
+                    this.groupLength = 0;
+                }
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.Writer#flush()
+     */
+    @Override
+    public void flush() throws IOException
+    {
+        this.out.flush();
+    }
+
+    /**
+     * Writes the bytes of the last, padded, group of characters and closes the output stream.
+     * 
+     * @see java.io.Writer#close()
+     */
+    @Override
+    public void close() throws IOException
+    {
+        if (this.closed) {
+            return;
+        }
+        this.closed = true;
+
+        try {
+            // A single character left doesn't make a byte.
+            if (this.groupLength == 2) {
+                this.out.write(this.group >> 4);
+            } else if (this.groupLength == 3) {
+                this.out.write(this.group >> 10);
+                this.out.write(this.group >> 2);
+            }
+        } finally {
+            this.out.close();
+        }
+    }
+}
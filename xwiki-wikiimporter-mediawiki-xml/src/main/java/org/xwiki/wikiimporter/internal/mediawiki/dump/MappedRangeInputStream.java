@@ -0,0 +1,127 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Reads a byte range of a file through memory mapped windows.
+ * 
+ * @version $Id$
+ */
+public class MappedRangeInputStream extends InputStream
+{
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    private final FileChannel channel;
+
+    private final long end;
+
+    private long windowStart;
+
+    private MappedByteBuffer window;
+
+    /**
+     * @param channel the channel of the file, not closed by this stream
+     * @param start the offset of the first byte to read
+     * @param end the offset following the last byte to read
+     */
+    public MappedRangeInputStream(FileChannel channel, long start, long end)
+    {
+        this.channel = channel;
+        this.windowStart = start;
+        this.end = end;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read() throws IOException
+    {
+        if (!nextWindow()) {
+            return -1;
+        }
+
+        return this.window.get() & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextWindow()) {
+            return -1;
+        }
+
+        int length = Math.min(len, this.window.remaining());
+        this.window.get(b, off, length);
+
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#available()
+     */
+    @Override
+    public int available() throws IOException
+    {
+        return this.window != null ? this.window.remaining() : 0;
+    }
+
+    /**
+     * @return <tt>false</tt> if the end of the range has been reached
+     */
+    private boolean nextWindow() throws IOException
+    {
+        if (this.window != null && this.window.hasRemaining()) {
+            return true;
+        }
+
+        if (this.window != null) {
+            this.windowStart += this.window.capacity();
+        }
+
+        if (this.windowStart >= this.end) {
+            return false;
+        }
+
+        this.window =
+            this.channel.map(FileChannel.MapMode.READ_ONLY, this.windowStart, Math.min(WINDOW_SIZE, this.end
+                - this.windowStart));
+
+        return true;
+    }
+}
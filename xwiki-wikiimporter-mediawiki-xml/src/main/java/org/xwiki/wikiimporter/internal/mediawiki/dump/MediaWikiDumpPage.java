@@ -0,0 +1,198 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Raw MediaWiki page as read from the XML dump, before any wikitext parsing.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiDumpPage
+{
+    private String title;
+
+    private String namespace;
+
+    private String namespacePrefix;
+
+    private String id;
+
+    private String redirect;
+
+    private long offset = -1;
+
+    private List<MediaWikiDumpRevision> revisions = new ArrayList<MediaWikiDumpRevision>();
+
+    private List<MediaWikiDumpUpload> uploads = new ArrayList<MediaWikiDumpUpload>();
+
+    /**
+     * @return the title of the page
+     */
+    public String getTitle()
+    {
+        return this.title;
+    }
+
+    /**
+     * @param title the title of the page
+     */
+    public void setTitle(String title)
+    {
+        this.title = title;
+    }
+
+    /**
+     * @return the number of the namespace of the page, <tt>null</tt> if the dump doesn't provide it
+     */
+    public String getNamespace()
+    {
+        return this.namespace;
+    }
+
+    /**
+     * @param namespace the number of the namespace of the page
+     */
+    public void setNamespace(String namespace)
+    {
+        this.namespace = namespace;
+    }
+
+    /**
+     * @return the prefix of the namespace at the start of the title, <tt>null</tt> for the main namespace or if the
+     *         namespaces of the dump are unknown
+     */
+    public String getNamespacePrefix()
+    {
+        return this.namespacePrefix;
+    }
+
+    /**
+     * @param namespacePrefix the prefix of the namespace at the start of the title
+     */
+    public void setNamespacePrefix(String namespacePrefix)
+    {
+        this.namespacePrefix = namespacePrefix;
+    }
+
+    /**
+     * @return the title of the page this page redirects to, <tt>null</tt> if it isn't a redirect
+     */
+    public String getRedirect()
+    {
+        return this.redirect;
+    }
+
+    /**
+     * @param redirect the title of the page this page redirects to
+     */
+    public void setRedirect(String redirect)
+    {
+        this.redirect = redirect;
+    }
+
+    /**
+     * @return the MediaWiki page id
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @param id the MediaWiki page id
+     */
+    public void setId(String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return the offset of the page in the dump, -1 if unknown
+     */
+    public long getOffset()
+    {
+        return this.offset;
+    }
+
+    /**
+     * @param offset the offset of the page in the dump
+     */
+    public void setOffset(long offset)
+    {
+        this.offset = offset;
+    }
+
+    /**
+     * @return the revisions of the page in dump order
+     */
+    public List<MediaWikiDumpRevision> getRevisions()
+    {
+        return this.revisions;
+    }
+
+    /**
+     * @param revision the revision to add after the existing ones
+     */
+    public void addRevision(MediaWikiDumpRevision revision)
+    {
+        this.revisions.add(revision);
+    }
+
+    /**
+     * @return the files uploaded to the page, exported with their content
+     */
+    public List<MediaWikiDumpUpload> getUploads()
+    {
+        return this.uploads;
+    }
+
+    /**
+     * @param upload a file uploaded to the page
+     */
+    public void addUpload(MediaWikiDumpUpload upload)
+    {
+        this.uploads.add(upload);
+    }
+
+    /**
+     * Deletes the temporary files of the uploads, for a page which isn't imported.
+     */
+    public void deleteUploads()
+    {
+        for (MediaWikiDumpUpload upload : this.uploads) {
+            upload.delete();
+        }
+        this.uploads.clear();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.lang.Object#toString()
+     */
+    @Override
+    public String toString()
+    {
+        return "MediaWiki Dump Page :" + this.title;
+    }
+}
@@ -0,0 +1,136 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+/**
+ * Raw MediaWiki page revision as read from the XML dump. The text is kept as MediaWiki syntax.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiDumpRevision
+{
+    private String id;
+
+    private String timestamp;
+
+    private String author;
+
+    private String comment;
+
+    private boolean minor;
+
+    private String text;
+
+    /**
+     * @return the MediaWiki revision id
+     */
+    public String getId()
+    {
+        return this.id;
+    }
+
+    /**
+     * @param id the MediaWiki revision id
+     */
+    public void setId(String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @return the timestamp of the revision as found in the dump
+     */
+    public String getTimestamp()
+    {
+        return this.timestamp;
+    }
+
+    /**
+     * @param timestamp the timestamp of the revision as found in the dump
+     */
+    public void setTimestamp(String timestamp)
+    {
+        this.timestamp = timestamp;
+    }
+
+    /**
+     * @return the user name of the contributor
+     */
+    public String getAuthor()
+    {
+        return this.author;
+    }
+
+    /**
+     * @param author the user name of the contributor
+     */
+    public void setAuthor(String author)
+    {
+        this.author = author;
+    }
+
+    /**
+     * @return the revision comment
+     */
+    public String getComment()
+    {
+        return this.comment;
+    }
+
+    /**
+     * @param comment the revision comment
+     */
+    public void setComment(String comment)
+    {
+        this.comment = comment;
+    }
+
+    /**
+     * @return <tt>true</tt> if the revision is a minor edit
+     */
+    public boolean isMinor()
+    {
+        return this.minor;
+    }
+
+    /**
+     * @param minor <tt>true</tt> if the revision is a minor edit
+     */
+    public void setMinor(boolean minor)
+    {
+        this.minor = minor;
+    }
+
+    /**
+     * @return the MediaWiki syntax content of the revision
+     */
+    public String getText()
+    {
+        return this.text;
+    }
+
+    /**
+     * @param text the MediaWiki syntax content of the revision
+     */
+    public void setText(String text)
+    {
+        this.text = text;
+    }
+}
@@ -0,0 +1,241 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.io.SequenceInputStream;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.Collections;
+
+/**
+ * Splits an uncompressed MediaWiki dump into byte ranges of whole pages which can be parsed independently. The page
+ * boundaries are found by looking for the {@code <page>} tag in the memory mapped file, without parsing the XML: the
+ * {@code <} character is always escaped in the content of the dump so the tag can't appear anywhere else.
+ * <p>
+ * Each range is read as a standalone document made of the dump header (root element and {@code <siteinfo>}), the pages
+ * of the range and the closing root element.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiDumpSplitter
+{
+    private static final long WINDOW_SIZE = 64L * 1024 * 1024;
+
+    /**
+     * Size of the end of the file in which the closing root element is searched.
+     */
+    private static final long TAIL_SIZE = 1024 * 1024;
+
+    private static final String UTF8 = "UTF-8";
+
+    private static final byte[] PAGE_START;
+
+    private static final byte[] FOOTER;
+
+    static {
+        try {
+            PAGE_START = "<page>".getBytes(UTF8);
+            FOOTER = "</mediawiki>".getBytes(UTF8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final RandomAccessFile file;
+
+    private final FileChannel channel;
+
+    /**
+     * The header of the dump, everything before the first page.
+     */
+    private final byte[] header;
+
+    /**
+     * Offset of the first page.
+     */
+    private final long pagesStart;
+
+    /**
+     * Offset of the closing root element.
+     */
+    private final long pagesEnd;
+
+    /**
+     * @param dumpFile the uncompressed dump file
+     * @throws IOException if the file can't be read
+     */
+    public MediaWikiDumpSplitter(File dumpFile) throws IOException
+    {
+        this.file = new RandomAccessFile(dumpFile, "r");
+        try {
+            this.channel = this.file.getChannel();
+
+            long size = this.channel.size();
+            long tailStart = Math.max(0, size - TAIL_SIZE);
+            long footerStart = lastIndexOf(FOOTER, tailStart, size);
+            this.pagesEnd = footerStart != -1 ? footerStart : size;
+
+            long firstPage = indexOf(PAGE_START, 0, this.pagesEnd);
+            this.pagesStart = firstPage != -1 ? firstPage : this.pagesEnd;
+
+            this.header = new byte[(int) this.pagesStart];
+            this.channel.map(FileChannel.MapMode.READ_ONLY, 0, this.pagesStart).get(this.header);
+        } catch (IOException e) {
+            this.file.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Splits the pages of the dump into at most the given number of ranges of about the same size.
+     * 
+     * @param count the wanted number of ranges
+     * @return the boundaries of the ranges: range {@code i} starts at {@code boundaries[i]} and ends at
+     *         {@code boundaries[i + 1]}
+     * @throws IOException if the file can't be read
+     */
+    public long[] split(int count) throws IOException
+    {
+        return split(count, this.pagesStart);
+    }
+
+    /**
+     * Splits the pages of the dump following the given page into at most the given number of ranges of about the same
+     * size.
+     * 
+     * @param count the wanted number of ranges
+     * @param from the offset of the first page to include
+     * @return the boundaries of the ranges: range {@code i} starts at {@code boundaries[i]} and ends at
+     *         {@code boundaries[i + 1]}
+     * @throws IOException if the file can't be read
+     */
+    public long[] split(int count, long from) throws IOException
+    {
+        long[] boundaries = new long[count + 1];
+        int size = 0;
+
+        long start = Math.max(from, this.pagesStart);
+        boundaries[size++] = start;
+        long rangeSize = (this.pagesEnd - start) / count;
+        for (int i = 1; i < count; ++i) {
+            long target = Math.max(start + i * rangeSize, boundaries[size - 1] + 1);
+            long boundary = target < this.pagesEnd ? indexOf(PAGE_START, target, this.pagesEnd) : -1;
+            if (boundary == -1) {
+                break;
+            }
+            boundaries[size++] = boundary;
+        }
+        boundaries[size++] = this.pagesEnd;
+
+        return size == boundaries.length ? boundaries : copyOf(boundaries, size);
+    }
+
+    /**
+     * @param start the start of the range, a page boundary
+     * @param end the end of the range, a page boundary
+     * @return the standalone XML document of the range, keeping track of the offsets of its pages
+     */
+    public PageOffsetInputStream openRange(long start, long end)
+    {
+        InputStream range =
+            new SequenceInputStream(Collections.enumeration(Arrays.asList(new ByteArrayInputStream(this.header),
+                new MappedRangeInputStream(this.channel, start, end), new ByteArrayInputStream(FOOTER))));
+
+        return new PageOffsetInputStream(range, start - this.header.length);
+    }
+
+    /**
+     * Closes the dump file.
+     * 
+     * @throws IOException if the file can't be closed
+     */
+    public void close() throws IOException
+    {
+        this.file.close();
+    }
+
+    /**
+     * @return the offset of the first occurrence of the pattern in the given range of the file, -1 if not found
+     */
+    private long indexOf(byte[] pattern, long from, long to) throws IOException
+    {
+        for (long windowStart = from; windowStart < to; windowStart += WINDOW_SIZE) {
+            // Windows overlap so that a pattern crossing two windows is found.
+            long windowEnd = Math.min(windowStart + WINDOW_SIZE + pattern.length - 1, to);
+            MappedByteBuffer window =
+                this.channel.map(FileChannel.MapMode.READ_ONLY, windowStart, windowEnd - windowStart);
+            int index = indexOf(window, pattern);
+            if (index != -1) {
+                return windowStart + index;
+            }
+        }
+
+        return -1;
+    }
+
+    private long lastIndexOf(byte[] pattern, long from, long to) throws IOException
+    {
+        MappedByteBuffer window = this.channel.map(FileChannel.MapMode.READ_ONLY, from, to - from);
+        for (int i = window.limit() - pattern.length; i >= 0; --i) {
+            if (matches(window, i, pattern)) {
+                return from + i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static int indexOf(MappedByteBuffer window, byte[] pattern)
+    {
+        int last = window.limit() - pattern.length;
+        for (int i = 0; i <= last; ++i) {
+            if (window.get(i) == pattern[0] && matches(window, i, pattern)) {
+                return i;
+            }
+        }
+
+        return -1;
+    }
+
+    private static boolean matches(MappedByteBuffer window, int index, byte[] pattern)
+    {
+        for (int j = 0; j < pattern.length; ++j) {
+            if (window.get(index + j) != pattern[j]) {
+                return false;
+            }
+        }
+
+        return true;
+    }
+
+    private static long[] copyOf(long[] array, int length)
+    {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, length);
+
+        return copy;
+    }
+}
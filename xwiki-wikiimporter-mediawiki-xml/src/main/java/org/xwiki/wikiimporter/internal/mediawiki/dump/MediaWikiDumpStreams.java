@@ -0,0 +1,227 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.SequenceInputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.compress.compressors.xz.XZCompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Opens MediaWiki dump files, transparently decompressing bzip2, gzip and xz dumps. The compression is detected from
+ * the magic bytes of the file, not from its extension.
+ * 
+ * @version $Id$
+ */
+public final class MediaWikiDumpStreams
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    /**
+     * Size of the chunks produced by the decompression thread.
+     */
+    private static final int CHUNK_SIZE = 256 * 1024;
+
+    /**
+     * Maximum number of decompressed chunks waiting to be parsed.
+     */
+    private static final int CHUNK_COUNT = 16;
+
+    private static final byte[] GZIP_MAGIC = {(byte) 0x1f, (byte) 0x8b};
+
+    private static final byte[] BZIP2_MAGIC = {'B', 'Z', 'h'};
+
+    private static final byte[] XZ_MAGIC = {(byte) 0xfd, '7', 'z', 'X', 'Z', 0};
+
+    private static final byte[] PAGE_START = {'<', 'p', 'a', 'g', 'e', '>'};
+
+    private MediaWikiDumpStreams()
+    {
+        // Utility class.
+    }
+
+    /**
+     * Opens the given dump file. Compressed dumps are decompressed on a dedicated thread behind a bounded buffer.
+     * 
+     * @param file the dump file, plain or compressed
+     * @return the stream of the uncompressed XML
+     * @throws IOException if the file can't be opened
+     */
+    public static InputStream open(File file) throws IOException
+    {
+        InputStream stream = new BufferedInputStream(new FileInputStream(file), BUFFER_SIZE);
+
+        try {
+            InputStream decompressedStream = decompress(stream);
+            if (decompressedStream == stream) {
+                return stream;
+            }
+
+            return new ReadAheadInputStream(decompressedStream, CHUNK_SIZE, CHUNK_COUNT, "MediaWiki dump reader "
+                + file.getName());
+        } catch (IOException e) {
+            IOUtils.closeQuietly(stream);
+            throw e;
+        }
+    }
+
+    /**
+     * Opens the given dump file at the given page, keeping track of the offsets of the pages which are read. The
+     * returned stream starts with the header of the dump (the root element and the {@code <siteinfo>}) followed by the
+     * pages starting at the offset, so that it's still a valid MediaWiki XML dump.
+     * 
+     * @param file the dump file, plain or compressed
+     * @param offset the offset of a {@code <page>} tag in the uncompressed dump, 0 to open the dump from its start
+     * @return the stream of the uncompressed XML
+     * @throws IOException if the file can't be opened or if there's no page at the given offset
+     */
+    public static PageOffsetInputStream openAt(File file, long offset) throws IOException
+    {
+        InputStream stream = open(file);
+        if (offset <= 0) {
+            return new PageOffsetInputStream(stream, 0);
+        }
+
+        try {
+            byte[] header = readHeader(stream);
+            if (offset == header.length) {
+                // Resuming at the first page, whose tag has been read with the header.
+                InputStream firstPage = new ByteArrayInputStream(PAGE_START);
+                InputStream resumedStream =
+                    new SequenceInputStream(new SequenceInputStream(new ByteArrayInputStream(header), firstPage),
+                        stream);
+
+                return new PageOffsetInputStream(resumedStream, 0);
+            }
+
+            long remaining = offset - header.length - PAGE_START.length;
+            if (remaining < 0) {
+                throw new IOException("There is no page at offset " + offset + " of " + file);
+            }
+            while (remaining > 0) {
+                long skipped = stream.skip(remaining);
+                if (skipped <= 0) {
+                    if (stream.read() == -1) {
+                        throw new EOFException("The offset " + offset + " is beyond the end of " + file);
+                    }
+                    skipped = 1;
+                }
+                remaining -= skipped;
+            }
+
+            InputStream resumedStream = new SequenceInputStream(new ByteArrayInputStream(header), stream);
+
+            return new PageOffsetInputStream(resumedStream, offset - header.length);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(stream);
+            throw e;
+        }
+    }
+
+    /**
+     * Reads the stream up to and including the first {@code <page>} tag.
+     * 
+     * @return what comes before the first page
+     */
+    private static byte[] readHeader(InputStream stream) throws IOException
+    {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+
+        int matched = 0;
+        while (matched < PAGE_START.length) {
+            int b = stream.read();
+            if (b == -1) {
+                throw new EOFException("No page found in the dump");
+            }
+            header.write(b);
+
+            if (b == PAGE_START[matched]) {
+                ++matched;
+            } else {
+                matched = b == PAGE_START[0] ? 1 : 0;
+            }
+        }
+
+        byte[] bytes = header.toByteArray();
+        byte[] result = new byte[bytes.length - PAGE_START.length];
+        System.arraycopy(bytes, 0, result, 0, result.length);
+
+        return result;
+    }
+
+    /**
+     * @param file the dump file
+     * @return <tt>true</tt> if the dump file is compressed
+     * @throws IOException if the file can't be read
+     */
+    public static boolean isCompressed(File file) throws IOException
+    {
+        InputStream stream = new BufferedInputStream(new FileInputStream(file), XZ_MAGIC.length);
+        try {
+            return startsWith(stream, BZIP2_MAGIC) || startsWith(stream, GZIP_MAGIC) || startsWith(stream, XZ_MAGIC);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * @param stream a stream supporting mark/reset, positioned on the first byte of the dump
+     * @return the decompressing stream, or the given stream if it's not compressed
+     * @throws IOException if the magic bytes can't be read
+     */
+    public static InputStream decompress(InputStream stream) throws IOException
+    {
+        if (startsWith(stream, BZIP2_MAGIC)) {
+            return new BZip2CompressorInputStream(stream, true);
+        } else if (startsWith(stream, GZIP_MAGIC)) {
+            return new GZIPInputStream(stream, BUFFER_SIZE);
+        } else if (startsWith(stream, XZ_MAGIC)) {
+            return new XZCompressorInputStream(stream, true);
+        }
+
+        return stream;
+    }
+
+    private static boolean startsWith(InputStream stream, byte[] magic) throws IOException
+    {
+        stream.mark(magic.length);
+        try {
+            for (byte b : magic) {
+                if (stream.read() != (b & 0xff)) {
+                    return false;
+                }
+            }
+
+            return true;
+        } finally {
+            stream.reset();
+        }
+    }
+}
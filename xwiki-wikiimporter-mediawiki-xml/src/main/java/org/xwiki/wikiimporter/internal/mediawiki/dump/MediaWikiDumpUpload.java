@@ -0,0 +1,95 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.Writer;
+
+/**
+ * File uploaded to a page, as exported in the dump with its content. The base64 content is decoded into a temporary
+ * file while it's read, which is deleted once the attachment is stored.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiDumpUpload
+{
+    private String fileName;
+
+    private File file;
+
+    /**
+     * @return the name of the uploaded file
+     */
+    public String getFileName()
+    {
+        return this.fileName;
+    }
+
+    /**
+     * @param fileName the name of the uploaded file
+     */
+    public void setFileName(String fileName)
+    {
+        this.fileName = fileName;
+    }
+
+    /**
+     * @return the temporary file holding the decoded content, <tt>null</tt> if the dump has no content for the upload
+     */
+    public File getFile()
+    {
+        return this.file;
+    }
+
+    /**
+     * @return <tt>true</tt> if both the name and the content of the file have been read
+     */
+    public boolean isComplete()
+    {
+        return this.fileName != null && this.fileName.length() > 0 && this.file != null;
+    }
+
+    /**
+     * Creates the temporary file receiving the content of the upload.
+     * 
+     * @return the writer decoding the base64 content into the temporary file, to be closed by the caller
+     * @throws IOException if the temporary file can't be created
+     */
+    public Writer openContent() throws IOException
+    {
+        this.file = File.createTempFile("mediawiki-upload", null);
+
+        return new Base64DecodingWriter(new BufferedOutputStream(new FileOutputStream(this.file)));
+    }
+
+    /**
+     * Deletes the temporary file of an upload which isn't imported.
+     */
+    public void delete()
+    {
+        if (this.file != null) {
+            this.file.delete();
+            this.file = null;
+        }
+    }
+}
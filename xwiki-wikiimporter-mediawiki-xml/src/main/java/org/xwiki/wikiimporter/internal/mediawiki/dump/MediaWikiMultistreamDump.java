@@ -0,0 +1,176 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.SequenceInputStream;
+import java.util.Arrays;
+import java.util.Collections;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorInputStream;
+import org.apache.commons.io.IOUtils;
+
+/**
+ * MediaWiki multistream dump ({@code pages-articles-multistream.xml.bz2}). Such a dump is a concatenation of
+ * independent bzip2 streams of about 100 pages each, whose offsets are listed in the companion index file (lines of
+ * {@code offset:pageid:title}). Each stream can thus be decompressed and parsed on its own.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiMultistreamDump
+{
+    private static final int BUFFER_SIZE = 64 * 1024;
+
+    private static final String UTF8 = "UTF-8";
+
+    private static final byte[] FOOTER;
+
+    static {
+        try {
+            FOOTER = "</mediawiki>".getBytes(UTF8);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private final File file;
+
+    private final long[] offsets;
+
+    /**
+     * The decompressed first stream of the dump, which contains the root element and the {@code <siteinfo>}.
+     */
+    private final byte[] header;
+
+    /**
+     * @param file the multistream dump file
+     * @param indexFile the index file of the dump, plain or compressed
+     * @throws IOException if the dump or the index can't be read
+     */
+    public MediaWikiMultistreamDump(File file, File indexFile) throws IOException
+    {
+        this.file = file;
+        this.offsets = readOffsets(indexFile);
+
+        if (this.offsets.length == 0) {
+            throw new IOException("No stream found in the multistream index " + indexFile);
+        }
+
+        InputStream stream = openBZip2Stream(0);
+        try {
+            this.header = IOUtils.toByteArray(stream);
+        } finally {
+            IOUtils.closeQuietly(stream);
+        }
+    }
+
+    /**
+     * @return the number of page streams in the dump
+     */
+    public int getStreamCount()
+    {
+        return this.offsets.length;
+    }
+
+    /**
+     * @param index the index of the stream
+     * @return the offset of the stream in the compressed dump file
+     */
+    public long getStreamOffset(int index)
+    {
+        return this.offsets[index];
+    }
+
+    /**
+     * Opens the given page stream as a standalone XML document: the pages of the stream are surrounded by the header
+     * of the dump and the closing root element.
+     * 
+     * @param index the index of the stream
+     * @return the stream of the uncompressed XML
+     * @throws IOException if the stream can't be opened
+     */
+    public InputStream openStream(int index) throws IOException
+    {
+        InputStream pages = openBZip2Stream(this.offsets[index]);
+
+        return new SequenceInputStream(Collections.enumeration(Arrays.asList(new ByteArrayInputStream(this.header),
+            pages, new ByteArrayInputStream(FOOTER))));
+    }
+
+    private InputStream openBZip2Stream(long offset) throws IOException
+    {
+        FileInputStream fileStream = new FileInputStream(this.file);
+        try {
+            fileStream.getChannel().position(offset);
+
+            // Only decompress the stream starting at the offset, not the following ones.
+            return new BZip2CompressorInputStream(new BufferedInputStream(fileStream, BUFFER_SIZE), false);
+        } catch (IOException e) {
+            IOUtils.closeQuietly(fileStream);
+            throw e;
+        }
+    }
+
+    private static long[] readOffsets(File indexFile) throws IOException
+    {
+        long[] offsets = new long[1024];
+        int size = 0;
+
+        BufferedReader reader = new BufferedReader(new InputStreamReader(MediaWikiDumpStreams.open(indexFile), UTF8));
+        try {
+            long previousOffset = -1;
+            for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                int separator = line.indexOf(':');
+                if (separator <= 0) {
+                    continue;
+                }
+
+                long offset = Long.parseLong(line.substring(0, separator));
+                // Consecutive pages of the same stream share the same offset.
+                if (offset != previousOffset) {
+                    if (size == offsets.length) {
+                        long[] newOffsets = new long[size * 2];
+                        System.arraycopy(offsets, 0, newOffsets, 0, size);
+                        offsets = newOffsets;
+                    }
+                    offsets[size++] = offset;
+                    previousOffset = offset;
+                }
+            }
+        } catch (NumberFormatException e) {
+            throw new IOException("Invalid multistream index " + indexFile + ": " + e.getMessage());
+        } finally {
+            IOUtils.closeQuietly(reader);
+        }
+
+        long[] result = new long[size];
+        System.arraycopy(offsets, 0, result, 0, size);
+        Arrays.sort(result);
+
+        return result;
+    }
+}
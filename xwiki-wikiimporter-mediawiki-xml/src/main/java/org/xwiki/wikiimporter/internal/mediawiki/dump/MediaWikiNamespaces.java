@@ -0,0 +1,92 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The namespaces declared in the {@code <siteinfo>} of a dump, by key and by prefix. They're read once per dump and
+ * used to resolve the namespace of each page from its {@code <ns>} or its title.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiNamespaces
+{
+    /**
+     * The key of the main namespace, which has no prefix.
+     */
+    public static final String MAIN_NAMESPACE = "0";
+
+    private Map<String, String> prefixes = new HashMap<String, String>();
+
+    private Map<String, String> keys = new HashMap<String, String>();
+
+    /**
+     * @param key the key of the namespace
+     * @param prefix the prefix of the titles of the pages of the namespace
+     */
+    public void addNamespace(String key, String prefix)
+    {
+        if (prefix != null && prefix.length() > 0) {
+            this.prefixes.put(key, prefix);
+            this.keys.put(prefix, key);
+        }
+    }
+
+    /**
+     * @param key the key of a namespace
+     * @return the prefix of the namespace, <tt>null</tt> for the main namespace or an unknown one
+     */
+    public String getPrefix(String key)
+    {
+        return this.prefixes.get(key);
+    }
+
+    /**
+     * @param prefix the prefix of a title
+     * @return the key of the namespace, <tt>null</tt> if the prefix isn't a namespace
+     */
+    public String getKey(String prefix)
+    {
+        return this.keys.get(prefix);
+    }
+
+    /**
+     * Sets the namespace of the page from its title if the dump didn't provide it, and the prefix of its namespace.
+     * 
+     * @param page the page whose title and namespace have been read
+     */
+    public void resolve(MediaWikiDumpPage page)
+    {
+        String title = page.getTitle();
+        if (page.getNamespace() == null && title != null) {
+            int colon = title.indexOf(':');
+            String key = colon > 0 ? getKey(title.substring(0, colon)) : null;
+            page.setNamespace(key != null ? key : MAIN_NAMESPACE);
+        }
+
+        String prefix = getPrefix(page.getNamespace());
+        if (prefix != null && title != null && title.length() > prefix.length() && title.startsWith(prefix)
+            && title.charAt(prefix.length()) == ':') {
+            page.setNamespacePrefix(prefix);
+        }
+    }
+}
@@ -0,0 +1,254 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * The titles of the pages of a dump, read in a first pass so that the links can be resolved against the pages which
+ * are actually imported. Only a 64 bits hash of each title is kept, in a sorted array: 5 million titles take 40MB.
+ * The redirects are kept with their target, chains of redirects being collapsed, so that the links to a redirect
+ * point to its final target. The titles are added while the dump is read, then the index is built once and only read
+ * afterwards, from any thread.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiTitleIndex
+{
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    /**
+     * MediaWiki itself doesn't follow double redirects, this is only a guard against long chains and loops.
+     */
+    private static final int MAX_REDIRECTS = 10;
+
+    private MediaWikiNamespaces namespaces = new MediaWikiNamespaces();
+
+    private long[] hashes = new long[1024];
+
+    private int size;
+
+    /**
+     * The normalized title of each redirect, with the normalized title of its target.
+     */
+    private Map<String, String> redirects = new HashMap<String, String>();
+
+    /**
+     * @param namespaces the namespaces declared in the siteinfo of the dump, used to normalize the titles
+     */
+    public void setNamespaces(MediaWikiNamespaces namespaces)
+    {
+        this.namespaces = namespaces;
+    }
+
+    /**
+     * @return the namespaces declared in the siteinfo of the dump
+     */
+    public MediaWikiNamespaces getNamespaces()
+    {
+        return this.namespaces;
+    }
+
+    /**
+     * @param title the title of a page of the dump
+     */
+    public void add(String title)
+    {
+        String normalizedTitle = normalize(title);
+        if (normalizedTitle != null) {
+            if (this.size == this.hashes.length) {
+                this.hashes = copyOf(this.hashes, this.size * 2);
+            }
+            this.hashes[this.size++] = hash(normalizedTitle);
+        }
+    }
+
+    /**
+     * @param title the title of a redirect page of the dump
+     * @param target the title of the page it redirects to
+     */
+    public void addRedirect(String title, String target)
+    {
+        String normalizedTitle = normalize(title);
+        String normalizedTarget = normalize(target);
+        if (normalizedTitle != null && normalizedTarget != null && !normalizedTitle.equals(normalizedTarget)) {
+            this.redirects.put(normalizedTitle, normalizedTarget);
+        }
+    }
+
+    /**
+     * Sorts the titles added so far and collapses the chains of redirects, the index can be searched afterwards.
+     */
+    public void build()
+    {
+        Arrays.sort(this.hashes, 0, this.size);
+
+        int distinct = 0;
+        for (int i = 0; i < this.size; ++i) {
+            if (distinct == 0 || this.hashes[i] != this.hashes[distinct - 1]) {
+                this.hashes[distinct++] = this.hashes[i];
+            }
+        }
+        this.size = distinct;
+        this.hashes = copyOf(this.hashes, distinct);
+
+        Map<String, String> finalTargets = new HashMap<String, String>(this.redirects.size() * 4 / 3 + 1);
+        for (Map.Entry<String, String> redirect : this.redirects.entrySet()) {
+            String target = redirect.getValue();
+            for (int i = 1; i < MAX_REDIRECTS && this.redirects.containsKey(target); ++i) {
+                target = this.redirects.get(target);
+            }
+            // Redirects to missing pages and loops are left out, the links point to the redirect itself.
+            if (!this.redirects.containsKey(target) && contains(target)) {
+                finalTargets.put(redirect.getKey(), target);
+            }
+        }
+        this.redirects = finalTargets;
+    }
+
+    /**
+     * @return the number of titles in the index
+     */
+    public int size()
+    {
+        return this.size;
+    }
+
+    /**
+     * @return the number of redirects whose target is in the index
+     */
+    public int getRedirectCount()
+    {
+        return this.redirects.size();
+    }
+
+    /**
+     * @param reference the target of a MediaWiki link
+     * @return the title of the page the link points to, the final target for a redirect, <tt>null</tt> if the page
+     *         isn't in the dump
+     */
+    public String find(String reference)
+    {
+        String title = normalize(reference);
+        if (title == null) {
+            return null;
+        }
+
+        String target = this.redirects.get(title);
+        if (target != null) {
+            return target;
+        }
+
+        return contains(title) ? title : null;
+    }
+
+    private boolean contains(String normalizedTitle)
+    {
+        return Arrays.binarySearch(this.hashes, 0, this.size, hash(normalizedTitle)) >= 0;
+    }
+
+    /**
+     * Normalizes the target of a link the way MediaWiki does: the anchor and the leading colon are removed, the
+     * underscores and the runs of white spaces are replaced by a single space, and the first letter of the namespace
+     * prefix and of the page name are capitalized.
+     * 
+     * @param reference the target of a MediaWiki link, or a title
+     * @return the title of the page the link points to, <tt>null</tt> if the link has no page
+     */
+    public String normalize(String reference)
+    {
+        if (reference == null) {
+            return null;
+        }
+
+        int end = reference.indexOf('#');
+        if (end < 0) {
+            end = reference.length();
+        }
+
+        StringBuilder title = new StringBuilder(end);
+        boolean pendingSpace = false;
+        for (int i = 0; i < end; ++i) {
+            char c = reference.charAt(i);
+            if (c == '_' || Character.isWhitespace(c)) {
+                pendingSpace = title.length() > 0;
+            } else if (c == ':' && i == 0) {
+                // [[:Page]] links to the page itself, whatever the namespace.
+                continue;
+            } else {
+                if (pendingSpace) {
+                    title.append(' ');
+                    pendingSpace = false;
+                }
+                title.append(c);
+            }
+        }
+
+        if (title.length() == 0) {
+            return null;
+        }
+
+        int colon = title.indexOf(":");
+        if (colon > 0 && colon < title.length() - 1) {
+            String prefix = capitalize(title.substring(0, colon).trim());
+            if (this.namespaces.getKey(prefix) != null) {
+                return prefix + ':' + capitalize(title.substring(colon + 1).trim());
+            }
+        }
+
+        return capitalize(title.toString());
+    }
+
+    private static long[] copyOf(long[] array, int length)
+    {
+        long[] copy = new long[length];
+        System.arraycopy(array, 0, copy, 0, Math.min(array.length, length));
+
+        return copy;
+    }
+
+    private String capitalize(String name)
+    {
+        if (name.length() == 0 || Character.isUpperCase(name.charAt(0))) {
+            return name;
+        }
+
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * 64 bits FNV-1a hash: with 5 million titles the probability of a collision is below one in a million.
+     */
+    private long hash(String title)
+    {
+        long hash = FNV_OFFSET_BASIS;
+        for (int i = 0; i < title.length(); ++i) {
+            char c = title.charAt(i);
+            hash = (hash ^ (c & 0xff)) * FNV_PRIME;
+            hash = (hash ^ (c >>> 8)) * FNV_PRIME;
+        }
+
+        return hash;
+    }
+}
@@ -0,0 +1,359 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.Writer;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import org.apache.commons.io.IOUtils;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiConstants;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiImporterException;
+
+/**
+ * Pull based (StAX) reader for MediaWiki XML dumps. Unlike the SAX based {@code MediaWikiXmlHandler} the caller drives
+ * the parsing: each call to {@link #nextPage()} reads exactly one {@code <page>} element and returns it, so pages can
+ * be consumed at the caller's pace or handed to other threads.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiXmlReader
+{
+    private static final XMLInputFactory FACTORY;
+
+    static {
+        FACTORY = XMLInputFactory.newInstance();
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, Boolean.FALSE);
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, Boolean.FALSE);
+    }
+
+    private XMLStreamReader xmlReader;
+
+    /**
+     * Provides the offsets of the pages, if known.
+     */
+    private PageOffsetInputStream pageOffsets;
+
+    /**
+     * Whether the superseded revisions are dropped as soon as the next one is read.
+     */
+    private boolean lastRevisionOnly;
+
+    /**
+     * Rejects pages before their revisions are read, <tt>null</tt> to read all the pages.
+     */
+    private MediaWikiDumpPageFilter pageFilter;
+
+    /**
+     * The namespaces declared in the siteinfo of the dump.
+     */
+    private MediaWikiNamespaces namespaces = new MediaWikiNamespaces();
+
+    /**
+     * @param stream the stream of the MediaWiki XML dump, the offsets of the pages are set when it's a
+     *            {@link PageOffsetInputStream}
+     * @throws MediaWikiImporterException if the StAX reader can't be created
+     */
+    public MediaWikiXmlReader(InputStream stream) throws MediaWikiImporterException
+    {
+        if (stream instanceof PageOffsetInputStream) {
+            this.pageOffsets = (PageOffsetInputStream) stream;
+        }
+
+        try {
+            this.xmlReader = FACTORY.createXMLStreamReader(stream);
+        } catch (XMLStreamException e) {
+            throw new MediaWikiImporterException("Failed to create the MediaWiki XML reader", e);
+        }
+    }
+
+    /**
+     * @param lastRevisionOnly <tt>true</tt> to keep only the last revision of each page, which is all that is imported
+     *            when the history isn't preserved. The superseded revisions are released right away and their text is
+     *            never parsed.
+     */
+    public void setLastRevisionOnly(boolean lastRevisionOnly)
+    {
+        this.lastRevisionOnly = lastRevisionOnly;
+    }
+
+    /**
+     * @param pageFilter the filter deciding which pages are returned, the revisions of the rejected pages being skipped
+     */
+    public void setPageFilter(MediaWikiDumpPageFilter pageFilter)
+    {
+        this.pageFilter = pageFilter;
+    }
+
+    /**
+     * Reads the next page of the dump.
+     * 
+     * @return the next page, or <tt>null</tt> when the end of the dump has been reached
+     * @throws MediaWikiImporterException in case of any errors parsing the XML
+     */
+    public MediaWikiDumpPage nextPage() throws MediaWikiImporterException
+    {
+        try {
+            while (this.xmlReader.hasNext()) {
+                if (this.xmlReader.next() == XMLStreamConstants.START_ELEMENT) {
+                    String name = this.xmlReader.getLocalName();
+                    if (MediaWikiConstants.PAGE_TAG.equals(name)) {
+                        MediaWikiDumpPage page = readPage();
+                        if (page != null) {
+                            return page;
+                        }
+                    } else if (MediaWikiConstants.NAMESPACE_DECLARATION_TAG.equals(name)) {
+                        readNamespace();
+                    }
+                }
+            }
+        } catch (XMLStreamException e) {
+            throw new MediaWikiImporterException("Error while reading the MediaWiki XML Dump", e);
+        }
+
+        return null;
+    }
+
+    /**
+     * @return the namespaces declared in the siteinfo of the dump, complete once the first page has been read
+     */
+    public MediaWikiNamespaces getNamespaces()
+    {
+        return this.namespaces;
+    }
+
+    /**
+     * Releases the resources of the underlying StAX reader. The stream given to the constructor is not closed.
+     */
+    public void close()
+    {
+        try {
+            this.xmlReader.close();
+        } catch (XMLStreamException e) {
+            // Nothing more can be done.
+        }
+    }
+
+    /**
+     * @return the page, <tt>null</tt> if it has been rejected by the filter
+     */
+    private MediaWikiDumpPage readPage() throws XMLStreamException
+    {
+        MediaWikiDumpPage page = new MediaWikiDumpPage();
+        if (this.pageOffsets != null) {
+            page.setOffset(this.pageOffsets.nextPageOffset());
+        }
+
+        // The title, namespace, id and redirect come before the revisions and the uploads.
+        boolean headerRead = false;
+        boolean pageRead = false;
+        try {
+            while (this.xmlReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+                String name = this.xmlReader.getLocalName();
+                if (MediaWikiConstants.PAGE_TITLE_TAG.equals(name)) {
+                    page.setTitle(this.xmlReader.getElementText());
+                } else if (MediaWikiConstants.NAMESPACE_TAG.equals(name)) {
+                    page.setNamespace(this.xmlReader.getElementText());
+                } else if (MediaWikiConstants.VERSION_TAG.equals(name)) {
+                    page.setId(this.xmlReader.getElementText());
+                } else if (MediaWikiConstants.REDIRECT_TAG.equals(name)) {
+                    page.setRedirect(this.xmlReader.getAttributeValue(null,
+                        MediaWikiConstants.REDIRECT_TITLE_ATTRIBUTE));
+                    skipElement();
+                } else if (MediaWikiConstants.PAGE_REVISION_TAG.equals(name)
+                    || MediaWikiConstants.UPLOAD_TAG.equals(name)) {
+                    if (!headerRead) {
+                        headerRead = true;
+                        if (!acceptPage(page)) {
+                            skipElement();
+                            skipRemainingElements();
+
+                            return null;
+                        }
+                    }
+                    if (MediaWikiConstants.UPLOAD_TAG.equals(name)) {
+                        readUpload(page);
+                    } else {
+                        if (this.lastRevisionOnly) {
+                            page.getRevisions().clear();
+                        }
+                        page.addRevision(readRevision());
+                    }
+                } else {
+                    skipElement();
+                }
+            }
+            pageRead = true;
+        } finally {
+            // The uploads already decoded aren't imported when the page can't be read.
+            if (!pageRead) {
+                page.deleteUploads();
+            }
+        }
+
+        return headerRead || acceptPage(page) ? page : null;
+    }
+
+    /**
+     * Resolves the namespace of the page once its title, namespace and id are read, and asks the filter.
+     */
+    private boolean acceptPage(MediaWikiDumpPage page)
+    {
+        this.namespaces.resolve(page);
+
+        return this.pageFilter == null || this.pageFilter.accept(page);
+    }
+
+    /**
+     * Reads a namespace declared in the siteinfo.
+     */
+    private void readNamespace() throws XMLStreamException
+    {
+        String key = this.xmlReader.getAttributeValue(null, MediaWikiConstants.NAMESPACE_KEY_ATTRIBUTE);
+        String prefix = this.xmlReader.getElementText();
+        if (key != null) {
+            this.namespaces.addNamespace(key, prefix.trim());
+        }
+    }
+
+    private MediaWikiDumpRevision readRevision() throws XMLStreamException
+    {
+        MediaWikiDumpRevision revision = new MediaWikiDumpRevision();
+
+        while (this.xmlReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = this.xmlReader.getLocalName();
+            if (MediaWikiConstants.VERSION_TAG.equals(name)) {
+                revision.setId(this.xmlReader.getElementText());
+            } else if (MediaWikiConstants.TIMESTAMP_TAG.equals(name)) {
+                revision.setTimestamp(this.xmlReader.getElementText());
+            } else if (MediaWikiConstants.CONTRIBUTOR_TAG.equals(name)) {
+                revision.setAuthor(readContributor());
+            } else if (MediaWikiConstants.IS_MINOR_TAG.equals(name)) {
+                revision.setMinor(true);
+                skipElement();
+            } else if (MediaWikiConstants.COMMENT_TAG.equals(name)) {
+                revision.setComment(this.xmlReader.getElementText());
+            } else if (MediaWikiConstants.TEXT_CONTENT_TAG.equals(name)) {
+                revision.setText(this.xmlReader.getElementText());
+            } else {
+                skipElement();
+            }
+        }
+
+        return revision;
+    }
+
+    /**
+     * Reads an upload, its base64 content being decoded into a file as it's read.
+     */
+    private void readUpload(MediaWikiDumpPage page) throws XMLStreamException
+    {
+        MediaWikiDumpUpload upload = new MediaWikiDumpUpload();
+
+        while (this.xmlReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            String name = this.xmlReader.getLocalName();
+            if (MediaWikiConstants.UPLOAD_FILENAME_TAG.equals(name)) {
+                upload.setFileName(this.xmlReader.getElementText().trim());
+            } else if (MediaWikiConstants.UPLOAD_CONTENTS_TAG.equals(name)
+                && MediaWikiConstants.BASE64_ENCODING.equals(this.xmlReader.getAttributeValue(null,
+                    MediaWikiConstants.ENCODING_ATTRIBUTE))) {
+                readUploadContent(upload);
+            } else {
+                skipElement();
+            }
+        }
+
+        if (upload.isComplete()) {
+            page.addUpload(upload);
+        } else {
+            upload.delete();
+        }
+    }
+
+    private void readUploadContent(MediaWikiDumpUpload upload) throws XMLStreamException
+    {
+        Writer content = null;
+        try {
+            content = upload.openContent();
+            // The text comes in chunks since the reader doesn't coalesce it.
+            int event = this.xmlReader.next();
+            while (event != XMLStreamConstants.END_ELEMENT) {
+                if (event == XMLStreamConstants.CHARACTERS || event == XMLStreamConstants.CDATA) {
+                    content.write(this.xmlReader.getTextCharacters(), this.xmlReader.getTextStart(), this.xmlReader
+                        .getTextLength());
+                }
+                event = this.xmlReader.next();
+            }
+            content.close();
+        } catch (IOException e) {
+            IOUtils.closeQuietly(content);
+            upload.delete();
+            throw new XMLStreamException("Failed to decode the content of an upload", e);
+        } finally {
+            IOUtils.closeQuietly(content);
+        }
+    }
+
+    private String readContributor() throws XMLStreamException
+    {
+        String author = null;
+
+        while (this.xmlReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            if (MediaWikiConstants.AUTHOR_TAG.equals(this.xmlReader.getLocalName())) {
+                author = this.xmlReader.getElementText();
+            } else {
+                skipElement();
+            }
+        }
+
+        return author;
+    }
+
+    /**
+     * Skips the next siblings of the current element, the reader is left on the end element of the parent.
+     */
+    private void skipRemainingElements() throws XMLStreamException
+    {
+        while (this.xmlReader.nextTag() == XMLStreamConstants.START_ELEMENT) {
+            skipElement();
+        }
+    }
+
+    /**
+     * Skips the current element and all its children, the reader is left on the matching end element.
+     */
+    private void skipElement() throws XMLStreamException
+    {
+        int depth = 1;
+        while (depth > 0) {
+            int event = this.xmlReader.next();
+            if (event == XMLStreamConstants.START_ELEMENT) {
+                depth++;
+            } else if (event == XMLStreamConstants.END_ELEMENT) {
+                depth--;
+            }
+        }
+    }
+}
@@ -0,0 +1,142 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.LinkedList;
+
+/**
+ * Keeps track of the offsets of the {@code <page>} tags going through the stream, so that the reader can know the exact
+ * position in the dump of each page it reads, whatever the amount of data buffered by the XML parser.
+ * 
+ * @version $Id$
+ */
+public class PageOffsetInputStream extends FilterInputStream
+{
+    private static final byte[] PAGE_START = {'<', 'p', 'a', 'g', 'e', '>'};
+
+    /**
+     * Offsets of the tags read from the stream but not yet claimed by the reader.
+     */
+    private final LinkedList<Long> offsets = new LinkedList<Long>();
+
+    /**
+     * Offset in the dump of the next byte read from the stream.
+     */
+    private long position;
+
+    /**
+     * Number of bytes of the tag matched so far.
+     */
+    private int matched;
+
+    /**
+     * @param in the stream to watch
+     * @param position the offset in the dump of the first byte of the stream
+     */
+    public PageOffsetInputStream(InputStream in, long position)
+    {
+        super(in);
+
+        this.position = position;
+    }
+
+    /**
+     * @return the offset of the next page read by the parser, -1 if unknown
+     */
+    public long nextPageOffset()
+    {
+        return this.offsets.isEmpty() ? -1 : this.offsets.removeFirst();
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.FilterInputStream#read()
+     */
+    @Override
+    public int read() throws IOException
+    {
+        int b = super.read();
+        if (b != -1) {
+            scan((byte) b);
+        }
+
+        return b;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.FilterInputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        int length = super.read(b, off, len);
+        for (int i = 0; i < length; ++i) {
+            scan(b[off + i]);
+        }
+
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.FilterInputStream#skip(long)
+     */
+    @Override
+    public long skip(long n) throws IOException
+    {
+        // Skipped bytes have to be scanned too.
+        byte[] buffer = new byte[(int) Math.min(n, 8192)];
+        int length = read(buffer, 0, buffer.length);
+
+        return Math.max(length, 0);
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.FilterInputStream#markSupported()
+     */
+    @Override
+    public boolean markSupported()
+    {
+        return false;
+    }
+
+    private void scan(byte b)
+    {
+        if (b == PAGE_START[this.matched]) {
+            if (++this.matched == PAGE_START.length) {
+                this.offsets.addLast(this.position - PAGE_START.length + 1);
+                this.matched = 0;
+            }
+        } else {
+            this.matched = b == PAGE_START[0] ? 1 : 0;
+        }
+
+        ++this.position;
+    }
+}
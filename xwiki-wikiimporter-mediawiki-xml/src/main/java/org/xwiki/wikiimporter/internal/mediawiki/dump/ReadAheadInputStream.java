@@ -0,0 +1,227 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.internal.mediawiki.dump;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+import org.apache.commons.io.IOUtils;
+
+/**
+ * Reads a source stream on a dedicated thread into a bounded queue of chunks, so that producing the bytes (typically
+ * decompressing them) overlaps with consuming them.
+ * 
+ * @version $Id$
+ */
+public class ReadAheadInputStream extends InputStream
+{
+    /**
+     * Marks the end of the source stream in the queue.
+     */
+    private static final byte[] EOF = new byte[0];
+
+    private final BlockingQueue<byte[]> chunks;
+
+    private final Thread thread;
+
+    /**
+     * The failure of the reading thread, thrown to the consumer once the chunks read before it are consumed.
+     */
+    private volatile Throwable failure;
+
+    private volatile boolean closed;
+
+    private byte[] current;
+
+    private int position;
+
+    /**
+     * @param source the stream to read ahead, closed when the end is reached or when this stream is closed
+     * @param chunkSize the size of each chunk read from the source
+     * @param chunkCount the maximum number of chunks waiting to be consumed
+     * @param name the name of the reading thread
+     */
+    public ReadAheadInputStream(final InputStream source, final int chunkSize, int chunkCount, String name)
+    {
+        this.chunks = new ArrayBlockingQueue<byte[]>(chunkCount);
+
+        this.thread = new Thread(new Runnable()
+        {
+            public void run()
+            {
+                fill(source, chunkSize);
+            }
+        }, name);
+        this.thread.setDaemon(true);
+        this.thread.start();
+    }
+
+    private void fill(InputStream source, int chunkSize)
+    {
+        try {
+            boolean eof = false;
+            while (!eof && !this.closed) {
+                byte[] buffer = new byte[chunkSize];
+                int length = 0;
+                int read = 0;
+                try {
+                    while (length < chunkSize && (read = source.read(buffer, length, chunkSize - length)) != -1) {
+                        length += read;
+                    }
+                } catch (Throwable e) {
+                    // Decompressors also throw runtime exceptions and errors on corrupt input, the consumer must see
+                    // them, after the bytes read before them, rather than wait forever for the end of the stream.
+                    this.failure = e;
+                    read = -1;
+                }
+                eof = read == -1;
+
+                if (length > 0) {
+                    if (length < chunkSize) {
+                        byte[] lastBuffer = new byte[length];
+                        System.arraycopy(buffer, 0, lastBuffer, 0, length);
+                        buffer = lastBuffer;
+                    }
+                    this.chunks.put(buffer);
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed by the consumer.
+        } finally {
+            IOUtils.closeQuietly(source);
+        }
+
+        if (!this.closed) {
+            try {
+                this.chunks.put(EOF);
+            } catch (InterruptedException e) {
+                // Closed by the consumer.
+            }
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#read()
+     */
+    @Override
+    public int read() throws IOException
+    {
+        if (!nextChunk()) {
+            return -1;
+        }
+
+        return this.current[this.position++] & 0xff;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#read(byte[], int, int)
+     */
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException
+    {
+        if (len == 0) {
+            return 0;
+        }
+
+        if (!nextChunk()) {
+            return -1;
+        }
+
+        int length = Math.min(len, this.current.length - this.position);
+        System.arraycopy(this.current, this.position, b, off, length);
+        this.position += length;
+
+        return length;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#available()
+     */
+    @Override
+    public int available() throws IOException
+    {
+        return this.current != null ? this.current.length - this.position : 0;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see java.io.InputStream#close()
+     */
+    @Override
+    public void close() throws IOException
+    {
+        this.closed = true;
+        this.thread.interrupt();
+        this.chunks.clear();
+    }
+
+    /**
+     * @return <tt>false</tt> if the end of the source has been reached
+     */
+    private boolean nextChunk() throws IOException
+    {
+        if (this.current == EOF) {
+            return endOfStream();
+        } else if (this.current != null && this.position < this.current.length) {
+            return true;
+        }
+
+        try {
+            this.current = this.chunks.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for data");
+        }
+        this.position = 0;
+
+        if (this.current == EOF) {
+            return endOfStream();
+        }
+
+        return true;
+    }
+
+    /**
+     * @return <tt>false</tt>, the end of the source having been reached
+     * @throws IOException if the source couldn't be read up to its end
+     */
+    private boolean endOfStream() throws IOException
+    {
+        if (this.failure instanceof IOException) {
+            throw (IOException) this.failure;
+        } else if (this.failure != null) {
+            IOException exception = new IOException("Failed to read ahead: " + this.failure.getMessage());
+            exception.initCause(this.failure);
+            throw exception;
+        }
+
+        return false;
+    }
+}
@@ -19,19 +19,23 @@
  */
 package org.xwiki.wikiimporter.internal.mediawiki.wiki;
 
+import java.io.ByteArrayInputStream;
 import java.io.File;
 import java.io.FileInputStream;
+import java.io.IOException;
 import java.io.InputStream;
-import java.util.ArrayList;
+import java.security.MessageDigest;
 import java.util.Collection;
-import java.util.List;
-import java.util.regex.Matcher;
-import java.util.regex.Pattern;
+import java.util.Set;
 
 import org.apache.commons.io.FileUtils;
 import org.apache.commons.io.filefilter.IOFileFilter;
 import org.apache.commons.lang.StringUtils;
 import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiAttachmentIndex;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiAttachmentPrefetcher;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiAttachmentStore;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiImportIndexes;
 import org.xwiki.wikiimporter.wiki.AbstractAttachment;
 
 /**
@@ -45,16 +49,89 @@ public class MediaWikiAttachment extends AbstractAttachment
 
     private String excludeDirList;
 
+    private MediaWikiAttachmentIndex index;
+
+    private MediaWikiAttachmentPrefetcher prefetcher;
+
+    private MediaWikiAttachmentStore attachmentStore;
+
+    /**
+     * The reference under which the content is recorded in the attachment store once stored, <tt>null</tt> if none.
+     */
+    private String storeReference;
+
     private WikiImporterLogger logger;
 
+    private boolean fileLookedUp;
+
+    /**
+     * Whether the file is a temporary copy of the content, deleted once read.
+     */
+    private boolean temporaryFile;
+
     public MediaWikiAttachment(String directory, String fileName, String excludeDirList, WikiImporterLogger logger)
+    {
+        this(directory, fileName, excludeDirList, null, logger);
+    }
+
+    /**
+     * @param directory the attachment directory
+     * @param fileName the name of the file of the attachment
+     * @param excludeDirList the comma separated names of the directories to skip
+     * @param indexes the indexes of the import: the files of the attachment directory, the directory being walked
+     *            without it, and the reader of the attachment files, <tt>null</tt> if none
+     * @param logger the import logger
+     */
+    public MediaWikiAttachment(String directory, String fileName, String excludeDirList,
+        MediaWikiImportIndexes indexes, WikiImporterLogger logger)
     {
         this.directory = directory;
         this.fileName = fileName;
         this.excludeDirList = excludeDirList;
+        if (indexes != null) {
+            this.index = indexes.getAttachmentIndex();
+            this.prefetcher = indexes.getAttachmentPrefetcher();
+            this.attachmentStore = indexes.getAttachmentStore();
+        }
         this.logger = logger;
     }
 
+    /**
+     * @param file the temporary file holding the content of an upload of the dump, deleted once the content is read
+     * @param fileName the name of the file of the attachment
+     * @param logger the import logger
+     */
+    public MediaWikiAttachment(File file, String fileName, WikiImporterLogger logger)
+    {
+        this.fileName = fileName;
+        this.attachmentAsFile = file;
+        this.fileLookedUp = true;
+        this.temporaryFile = true;
+        this.logger = logger;
+    }
+
+    /**
+     * @param storeReference the reference under which the content is recorded in the attachment store once stored,
+     *            <tt>Space.Page@file name</tt>
+     */
+    public void setStoreReference(String storeReference)
+    {
+        this.storeReference = storeReference;
+    }
+
+    /**
+     * Starts reading the file of the attachment in the background, if the attachments are prefetched.
+     */
+    public void prefetch()
+    {
+        if (this.prefetcher != null) {
+            File file = getFile();
+            if (file != null) {
+                this.prefetcher.prefetch(file);
+            }
+        }
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -62,45 +139,205 @@ public class MediaWikiAttachment extends AbstractAttachment
      */
     public byte[] getContent()
     {
-        // TODO Auto-generated method stub
-        this.attachmentAsFile = fetchAttachment(directory, fileName, excludeDirsAsList(excludeDirList));
-        if (attachmentAsFile != null && attachmentAsFile.exists()) {
-            try {
-                InputStream is = new FileInputStream(attachmentAsFile);
+        File file = getFile();
+        if (file == null) {
+            return null;
+        }
 
-                // Get the size of the file
-                long length = attachmentAsFile.length();
+        byte[] prefetched = this.prefetcher != null ? this.prefetcher.take(file) : null;
+        if (prefetched != null) {
+            return prefetched;
+        }
 
-                if (length > Integer.MAX_VALUE) {
-                    logger.error(fileName + " is too large to import.", true);
-                }
+        if (file.length() > Integer.MAX_VALUE) {
+            logger.error(fileName + " is too large to be loaded in memory.", true);
+            return null;
+        }
 
-                // Create the byte array to hold the data
-                byte[] bytes = new byte[(int) length];
+        try {
+            return FileUtils.readFileToByteArray(file);
+        } catch (IOException e) {
+            logger.error("Attachment : Unable to read the file " + fileName + ": " + e.getMessage(), true);
+        } finally {
+            if (this.temporaryFile) {
+                file.delete();
+            }
+        }
 
-                // Read in the bytes
-                int offset = 0;
-                int numRead = 0;
-                while (offset < bytes.length && (numRead = is.read(bytes, offset, bytes.length - offset)) >= 0) {
-                    offset += numRead;
-                }
+        return null;
+    }
 
-                // Ensure all the bytes have been read in
-                if (offset < bytes.length) {
-                    logger.error("Attachment : Unable to read the complete file" + fileName, true);
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.AbstractAttachment#getContentAsStream()
+     */
+    @Override
+    public InputStream getContentAsStream() throws IOException
+    {
+        File file = getFile();
+        if (file == null) {
+            return null;
+        }
+
+        byte[] prefetched = this.prefetcher != null ? this.prefetcher.take(file) : null;
+        if (prefetched != null) {
+            return new ByteArrayInputStream(prefetched);
+        }
+
+        if (this.temporaryFile) {
+            final File temporaryFile = file;
+
+            return new FileInputStream(temporaryFile)
+            {
+                @Override
+                public void close() throws IOException
+                {
+                    try {
+                        super.close();
+                    } finally {
+                        temporaryFile.delete();
+                    }
                 }
+            };
+        }
 
-                // Close the input stream and return bytes
-                is.close();
-                return bytes;
+        return new FileInputStream(file);
+    }
 
-            } catch (Exception e) {
-                // TODO Handle Exceptions
-                e.printStackTrace();
-            }
+    /**
+     * {@inheritDoc}
+     * <p>
+     * The pages referencing the same content afterwards link to this attachment instead of storing a copy.
+     * 
+     * @see org.xwiki.wikiimporter.wiki.AbstractAttachment#onStored()
+     */
+    @Override
+    public void onStored()
+    {
+        if (this.attachmentStore != null && this.storeReference != null && getFile() != null) {
+            this.attachmentStore.addOwner(getFile(), this.storeReference);
+        }
+    }
 
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.AbstractAttachment#release()
+     */
+    @Override
+    public void release()
+    {
+        // The temporary copy is usually deleted once read, but not when the page isn't stored.
+        if (this.temporaryFile && this.attachmentAsFile != null) {
+            this.attachmentAsFile.delete();
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.AbstractAttachment#getFileSize()
+     */
+    @Override
+    public long getFileSize()
+    {
+        File file = getFile();
+
+        return file != null ? file.length() : 0;
+    }
+
+    /**
+     * @return the file of the attachment, looked up once, <tt>null</tt> if it can't be found
+     */
+    public File getFile()
+    {
+        if (!this.fileLookedUp) {
+            this.attachmentAsFile = findFile();
+            this.fileLookedUp = true;
+        }
+
+        return this.attachmentAsFile;
+    }
+
+    /**
+     * Finds the file of the attachment at the place MediaWiki stores it, then by its name in the attachment directory.
+     * 
+     * @return the file of the attachment, <tt>null</tt> if it can't be found
+     */
+    private File findFile()
+    {
+        if (StringUtils.isBlank(this.fileName) || this.directory == null) {
+            return null;
+        }
+
+        // The name comes from the content of the dump, it must not point outside of the attachment directory.
+        if (StringUtils.indexOfAny(this.fileName, "/\\") >= 0 || this.fileName.contains("..")) {
+            this.logger.warn("Invalid attachment name " + this.fileName + ", the attachment is skipped.", true);
+
+            return null;
+        }
+
+        String mediaWikiName = getMediaWikiName();
+        File hashedFile = getHashedFile(mediaWikiName);
+        if (hashedFile != null && hashedFile.isFile() && isInDirectory(hashedFile)) {
+            return hashedFile;
+        }
+
+        if (this.index != null) {
+            File file = this.index.find(mediaWikiName);
+
+            return file != null ? file : this.index.find(this.fileName);
+        }
+
+        return fetchAttachment(this.directory, this.fileName, MediaWikiAttachmentIndex
+            .parseExcludedDirectories(this.excludeDirList));
+    }
+
+    /**
+     * @return the name of the file as stored by MediaWiki: first letter capitalized and spaces replaced by underscores
+     */
+    private String getMediaWikiName()
+    {
+        String name = this.fileName.trim().replace(' ', '_');
+
+        return Character.toUpperCase(name.charAt(0)) + name.substring(1);
+    }
+
+    /**
+     * MediaWiki stores an upload in the <tt>x/xy</tt> sub directory of its upload directory, <tt>xy</tt> being the
+     * first two hexadecimal digits of the MD5 hash of the name of the file.
+     * 
+     * @param mediaWikiName the name of the file as stored by MediaWiki
+     * @return the file of the attachment if it's stored by MediaWiki, <tt>null</tt> if the hash can't be computed
+     */
+    private File getHashedFile(String mediaWikiName)
+    {
+        try {
+            byte[] hash = MessageDigest.getInstance("MD5").digest(mediaWikiName.getBytes("UTF-8"));
+            String firstDigit = Integer.toHexString((hash[0] >> 4) & 0xf);
+            String firstDigits = firstDigit + Integer.toHexString(hash[0] & 0xf);
+
+            return new File(new File(new File(this.directory, firstDigit), firstDigits), mediaWikiName);
+        } catch (Exception e) {
+            // MD5 and UTF-8 are always available.
+            return null;
+        }
+    }
+
+    /**
+     * @param file a file found for the attachment
+     * @return <tt>true</tt> if the file really is in the attachment directory, once the links are resolved
+     */
+    private boolean isInDirectory(File file)
+    {
+        try {
+            String directoryPath = new File(this.directory).getCanonicalPath() + File.separator;
+
+            return file.getCanonicalPath().startsWith(directoryPath);
+        } catch (IOException e) {
+            return false;
         }
-        return null;
     }
 
     /**
@@ -112,7 +349,7 @@ public class MediaWikiAttachment extends AbstractAttachment
      * @param excludeDirectories list of directories to be excluded while searching.
      * @return the File handle of the file if its found.
      */
-    private File fetchAttachment(final String directory, final String fileName, final List<String> excludeDirectories)
+    private File fetchAttachment(final String directory, final String fileName, final Set<String> excludeDirectories)
     {
 
         class MediaWikiAttachmentFilter implements IOFileFilter
@@ -168,21 +405,4 @@ public class MediaWikiAttachment extends AbstractAttachment
         return null;
 
     }
-
-    private List<String> excludeDirsAsList(String list)
-    {
-
-        List<String> excludeDirList = new ArrayList<String>();
-
-        if (StringUtils.isNotBlank(list)) {
-            Pattern comma = Pattern.compile("[^,]+");
-            Matcher matcher = comma.matcher(list);
-
-            while (matcher.find()) {
-                excludeDirList.add(matcher.group());
-            }
-        }
-
-        return excludeDirList;
-    }
 }
@@ -30,6 +30,21 @@ import org.xwiki.wikiimporter.wiki.AbstractWikiPage;
  */
 public class MediaWikiPage extends AbstractWikiPage
 {
+    /**
+     * The MediaWiki page id.
+     */
+    private String id;
+
+    /**
+     * The prefix of the namespace at the start of the title, <tt>null</tt> if unknown.
+     */
+    private String namespacePrefix;
+
+    /**
+     * Whether the space and name have been resolved from the title.
+     */
+    private boolean resolved;
+
     public MediaWikiPage(String mediaWikiTitle, String defaultSpace)
     {
         super(defaultSpace, null);
@@ -51,6 +66,31 @@ public class MediaWikiPage extends AbstractWikiPage
         return (MediaWikiPageRevision) super.getLastRevision();
     }
 
+    /**
+     * @return the MediaWiki page id
+     */
+    public String getId()
+    {
+        return id;
+    }
+
+    /**
+     * @param id the MediaWiki page id
+     */
+    public void setId(String id)
+    {
+        this.id = id;
+    }
+
+    /**
+     * @param namespacePrefix the prefix of the namespace at the start of the title, as declared in the siteinfo of the
+     *            dump
+     */
+    public void setNamespacePrefix(String namespacePrefix)
+    {
+        this.namespacePrefix = namespacePrefix;
+    }
+
     /**
      * {@inheritDoc}
      * 
@@ -68,32 +108,7 @@ public class MediaWikiPage extends AbstractWikiPage
      */
     public String getName()
     {
-        String tmpName = getLastRevision().getTitle();
-
-        tmpName = cleanEdges(tmpName, ':');
-        tmpName = cleanEdges(tmpName, '/');
-        // Return null if the page name is blank.
-        if (StringUtils.isBlank(tmpName)) {
-            return null;
-        }
-
-        // Clean if title has a space declared.
-        if (tmpName.indexOf(':') > 0 && tmpName.indexOf(':') < tmpName.length()) {
-            tmpName = tmpName.substring(tmpName.indexOf(':') + 1);
-        }
-
-        // Check for hierarchy if any
-        if (-1 != tmpName.indexOf('/')) {
-            int lastIndex = tmpName.lastIndexOf('/');
-            String parentStr = tmpName.substring(0, lastIndex);
-            if (-1 != parentStr.indexOf('/')) {
-                parentStr = parentStr.substring(parentStr.lastIndexOf('/') + 1);
-            }
-
-            tmpName = tmpName.substring(lastIndex + 1);
-        }
-        
-        this.pageName = MediaWikiConstants.convertPageName(tmpName);
+        resolve();
 
         return this.pageName;
     }
@@ -107,16 +122,60 @@ public class MediaWikiPage extends AbstractWikiPage
      */
     public String getSpace()
     {
-        String tmpSpace = cleanName(getLastRevision().getTitle(), "[^a-z0-9A-Z: ]", space);
+        resolve();
+
+        return this.space;
+    }
 
-        // Extract Space from title.
-        if (tmpSpace.indexOf(':') > 0 && tmpSpace.indexOf(':') < tmpSpace.length() - 1) {
-            this.space = tmpSpace.substring(0, tmpSpace.indexOf(':'));
+    /**
+     * Resolves the space and the name of the page from its title, once: they're asked several times per page. When the
+     * namespace of the page is known the title is split after its prefix, otherwise at its first colon.
+     */
+    private void resolve()
+    {
+        if (this.resolved) {
+            return;
+        }
+        this.resolved = true;
+
+        String title = getLastRevision().getTitle();
+        String prefix = this.namespacePrefix;
+        if (prefix != null && (title == null || !title.startsWith(prefix + ':'))) {
+            prefix = null;
+        }
+
+        // Space
+        if (prefix != null) {
+            this.space = cleanName(prefix, this.space);
         } else {
-            // TODO Handle Error with error log.
+            String tmpSpace = cleanName(title, this.space);
+            int colon = tmpSpace != null ? tmpSpace.indexOf(':') : -1;
+            if (colon > 0 && colon < tmpSpace.length() - 1) {
+                this.space = tmpSpace.substring(0, colon);
+            }
         }
 
-        return space;
+        // Name
+        String tmpName = prefix != null ? title.substring(prefix.length() + 1) : title;
+        tmpName = cleanEdges(tmpName, ':');
+        tmpName = cleanEdges(tmpName, '/');
+        // The name is null if the page name is blank.
+        if (StringUtils.isBlank(tmpName)) {
+            this.pageName = null;
+            return;
+        }
+
+        // Clean if title has a space declared.
+        if (prefix == null && tmpName.indexOf(':') > 0) {
+            tmpName = tmpName.substring(tmpName.indexOf(':') + 1);
+        }
+
+        // Check for hierarchy if any
+        if (-1 != tmpName.indexOf('/')) {
+            tmpName = tmpName.substring(tmpName.lastIndexOf('/') + 1);
+        }
+
+        this.pageName = MediaWikiConstants.convertPageName(tmpName);
     }
 
     /**
@@ -130,18 +189,26 @@ public class MediaWikiPage extends AbstractWikiPage
     }
 
     /**
-     * Cleans the given string as per the regex, if string is blank/null return the default value.
+     * Cleans the given string by keeping only alpha-numeric characters, colons and spaces, if string is blank/null
+     * return the default value.
      * 
      * @param name Name to be cleaned
-     * @param regex regex on which the sting to be cleaned. For eg: [^a-z0-9A-Z] All non alpha-numeric.
      * @param defaultName Name to return if the given string is null or blank.
      * @return the cleaned string or default name.
      */
-    private String cleanName(String name, String regex, String defaultName)
+    private String cleanName(String name, String defaultName)
     {
         if (StringUtils.isNotBlank(name)) {
-            name = name.replaceAll(regex, "").trim();
-            return name.trim();
+            StringBuilder cleanedName = new StringBuilder(name.length());
+            for (int i = 0; i < name.length(); ++i) {
+                char c = name.charAt(i);
+                if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == ':'
+                    || c == ' ') {
+                    cleanedName.append(c);
+                }
+            }
+
+            return cleanedName.toString().trim();
         }
         return defaultName;
     }
@@ -19,6 +19,8 @@
  */
 package org.xwiki.wikiimporter.internal.mediawiki.wiki;
 
+import org.xwiki.rendering.block.XDOM;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiContentParser;
 import org.xwiki.wikiimporter.wiki.AbstractWikiPageRevision;
 
 /**
@@ -28,6 +30,19 @@ import org.xwiki.wikiimporter.wiki.AbstractWikiPageRevision;
  */
 public class MediaWikiPageRevision extends AbstractWikiPageRevision
 {
+    /**
+     * Parses the original content on demand, when no XDOM has been set.
+     */
+    private MediaWikiContentParser contentParser;
+
+    private MediaWikiPage page;
+
+    /**
+     * Whether the original content has already been parsed: parsing adds the attachments and the tags found in the
+     * content, so it's done once, its result being kept, even when it failed.
+     */
+    private boolean parsed;
+
     public MediaWikiPageRevision()
     {
     }
@@ -36,4 +51,52 @@ public class MediaWikiPageRevision extends AbstractWikiPageRevision
     {
         super(previousMediaWikiPageRevision);
     }
+
+    /**
+     * Only the original content is kept in memory until the revision is written: the XDOM is built by the given parser
+     * the first time it's asked, and can be dropped once rendered.
+     * 
+     * @param contentParser the parser of the original content
+     * @param page the page of the revision, receiving the attachments found in the content
+     */
+    public void setContentParser(MediaWikiContentParser contentParser, MediaWikiPage page)
+    {
+        this.contentParser = contentParser;
+        this.page = page;
+    }
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.wikiimporter.wiki.AbstractWikiPageRevision#getContent()
+     */
+    @Override
+    public XDOM getContent()
+    {
+        if (this.content == null && !this.parsed && this.contentParser != null) {
+            this.parsed = true;
+            this.content = this.contentParser.parse(this.page, this);
+        }
+
+        return this.content;
+    }
+
+    /**
+     * {@inheritDoc}
+     * <p>
+     * With streaming rendering the original content is converted on demand, without building an XDOM.
+     * 
+     * @see org.xwiki.wikiimporter.wiki.AbstractWikiPageRevision#getRenderedContent()
+     */
+    @Override
+    public String getRenderedContent()
+    {
+        if (this.renderedContent == null && this.content == null && !this.parsed && this.contentParser != null
+            && this.contentParser.isStreamingRendering()) {
+            this.parsed = true;
+            this.renderedContent = this.contentParser.render(this.page, this);
+        }
+
+        return this.renderedContent;
+    }
 }
@@ -0,0 +1,149 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.ByteArrayOutputStream;
+import java.io.Writer;
+
+import junit.framework.Assert;
+
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.Base64DecodingWriter;
+
+/**
+ * Unit tests for {@link Base64DecodingWriter}.
+ * 
+ * @version $Id$
+ */
+public class Base64DecodingWriterTest
+{
+    private static final String ALPHABET = "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789+/";
+
+    @Test
+    public void testPadding() throws Exception
+    {
+        Assert.assertEquals("", decode(""));
+        Assert.assertEquals("f", decode("Zg=="));
+        Assert.assertEquals("fo", decode("Zm8="));
+        Assert.assertEquals("foo", decode("Zm9v"));
+        Assert.assertEquals("foob", decode("Zm9vYg=="));
+        Assert.assertEquals("fooba", decode("Zm9vYmE="));
+        Assert.assertEquals("foobar", decode("Zm9vYmFy"));
+    }
+
+    @Test
+    public void testMissingPadding() throws Exception
+    {
+        Assert.assertEquals("foob", decode("Zm9vYg"));
+        Assert.assertEquals("fooba", decode("Zm9vYmE"));
+        // A single character left doesn't make a byte.
+        Assert.assertEquals("foo", decode("Zm9vY"));
+    }
+
+    @Test
+    public void testWhiteSpaces() throws Exception
+    {
+        Assert.assertEquals("foobar", decode("  Zm9v\r\nYm\tFy\n"));
+        Assert.assertEquals("foob", decode("Zm9v\nYg=\n=\n"));
+    }
+
+    @Test
+    public void testContentAfterPadding() throws Exception
+    {
+        Assert.assertEquals("f", decode("Zg==Zm9v"));
+    }
+
+    @Test
+    public void testAllBytesInChunks() throws Exception
+    {
+        byte[] bytes = new byte[1000];
+        for (int i = 0; i < bytes.length; ++i) {
+            bytes[i] = (byte) (i * 7);
+        }
+        String encoded = encode(bytes);
+
+        // Write the characters in chunks of every size, so that the groups cross the writes.
+        for (int chunkSize = 1; chunkSize <= 9; ++chunkSize) {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            Writer writer = new Base64DecodingWriter(output);
+            char[] chars = encoded.toCharArray();
+            for (int off = 0; off < chars.length; off += chunkSize) {
+                writer.write(chars, off, Math.min(chunkSize, chars.length - off));
+            }
+            writer.close();
+
+            byte[] decoded = output.toByteArray();
+            Assert.assertEquals(bytes.length, decoded.length);
+            for (int i = 0; i < bytes.length; ++i) {
+                Assert.assertEquals(bytes[i], decoded[i]);
+            }
+        }
+    }
+
+    @Test
+    public void testCloseTwice() throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Writer writer = new Base64DecodingWriter(output);
+        writer.write("Zm8");
+        writer.close();
+        writer.close();
+
+        Assert.assertEquals("fo", new String(output.toByteArray(), "US-ASCII"));
+    }
+
+    private static String decode(String base64) throws Exception
+    {
+        ByteArrayOutputStream output = new ByteArrayOutputStream();
+        Writer writer = new Base64DecodingWriter(output);
+        writer.write(base64);
+        writer.close();
+
+        return new String(output.toByteArray(), "US-ASCII");
+    }
+
+    /**
+     * @return the base64 encoding of the given bytes, wrapped at 76 characters like in the dumps
+     */
+    private static String encode(byte[] bytes)
+    {
+        StringBuilder encoded = new StringBuilder();
+        for (int i = 0; i < bytes.length; i += 3) {
+            int group = (bytes[i] & 0xff) << 16;
+            if (i + 1 < bytes.length) {
+                group |= (bytes[i + 1] & 0xff) << 8;
+            }
+            if (i + 2 < bytes.length) {
+                group |= bytes[i + 2] & 0xff;
+            }
+
+            encoded.append(ALPHABET.charAt(group >> 18));
+            encoded.append(ALPHABET.charAt((group >> 12) & 0x3f));
+            encoded.append(i + 1 < bytes.length ? ALPHABET.charAt((group >> 6) & 0x3f) : '=');
+            encoded.append(i + 2 < bytes.length ? ALPHABET.charAt(group & 0x3f) : '=');
+
+            if ((i / 3 + 1) % 19 == 0) {
+                encoded.append('\n');
+            }
+        }
+
+        return encoded.toString();
+    }
+}
@@ -0,0 +1,172 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.xwiki.test.AbstractComponentTestCase;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiAttachmentPrefetcher;
+
+/**
+ * Unit tests for {@link MediaWikiAttachmentPrefetcher}.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiAttachmentPrefetcherTest extends AbstractComponentTestCase
+{
+    private File directory;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.test.AbstractComponentTestCase#setUp()
+     */
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        this.directory = File.createTempFile("attachments", "");
+        this.directory.delete();
+        this.directory.mkdirs();
+    }
+
+    @Test(timeout = 10000)
+    public void testTake() throws Exception
+    {
+        File file = createFile("Logo.png", "0123456789");
+
+        MediaWikiAttachmentPrefetcher prefetcher = createPrefetcher(100);
+        try {
+            prefetcher.prefetch(file);
+            // Prefetching the same file again doesn't read it twice.
+            prefetcher.prefetch(file);
+
+            Assert.assertEquals("0123456789", new String(prefetcher.take(file)));
+            // The content is released once taken.
+            Assert.assertNull(prefetcher.take(file));
+            Assert.assertEquals(1, prefetcher.getHits());
+        } finally {
+            shutdown(prefetcher);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testFileLargerThanBudget() throws Exception
+    {
+        File file = createFile("Large.png", "0123456789");
+
+        MediaWikiAttachmentPrefetcher prefetcher = createPrefetcher(5);
+        try {
+            prefetcher.prefetch(file);
+
+            Assert.assertNull(prefetcher.take(file));
+            Assert.assertEquals(0, prefetcher.getHits());
+        } finally {
+            shutdown(prefetcher);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testBudget() throws Exception
+    {
+        File first = createFile("First.png", "012345");
+        File second = createFile("Second.png", "abcdef");
+
+        MediaWikiAttachmentPrefetcher prefetcher = createPrefetcher(10);
+        try {
+            prefetcher.prefetch(first);
+            prefetcher.prefetch(second);
+
+            // Either the second file doesn't fit while the first one is read, or the first content is dropped to make
+            // room for the second one: the two contents are never held together.
+            byte[] firstContent = prefetcher.take(first);
+            byte[] secondContent = prefetcher.take(second);
+            Assert.assertTrue(firstContent == null ^ secondContent == null);
+            if (firstContent != null) {
+                Assert.assertEquals("012345", new String(firstContent));
+            } else {
+                Assert.assertEquals("abcdef", new String(secondContent));
+            }
+            Assert.assertEquals(1, prefetcher.getHits());
+        } finally {
+            shutdown(prefetcher);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testTakenContentFreesBudget() throws Exception
+    {
+        File first = createFile("First.png", "012345");
+        File second = createFile("Second.png", "abcdef");
+
+        MediaWikiAttachmentPrefetcher prefetcher = createPrefetcher(10);
+        try {
+            prefetcher.prefetch(first);
+            Assert.assertEquals("012345", new String(prefetcher.take(first)));
+
+            prefetcher.prefetch(second);
+            Assert.assertEquals("abcdef", new String(prefetcher.take(second)));
+            Assert.assertEquals(2, prefetcher.getHits());
+        } finally {
+            shutdown(prefetcher);
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testNotPrefetched() throws Exception
+    {
+        File file = createFile("Logo.png", "0123456789");
+
+        MediaWikiAttachmentPrefetcher prefetcher = createPrefetcher(100);
+        try {
+            Assert.assertNull(prefetcher.take(file));
+            // Missing and empty files aren't read.
+            File missingFile = new File(this.directory, "Missing.png");
+            prefetcher.prefetch(missingFile);
+            Assert.assertNull(prefetcher.take(missingFile));
+        } finally {
+            shutdown(prefetcher);
+        }
+    }
+
+    private MediaWikiAttachmentPrefetcher createPrefetcher(long budget) throws Exception
+    {
+        return new MediaWikiAttachmentPrefetcher(getComponentManager(), 2, budget);
+    }
+
+    private void shutdown(MediaWikiAttachmentPrefetcher prefetcher) throws Exception
+    {
+        prefetcher.shutdown();
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    private File createFile(String name, String content) throws Exception
+    {
+        File file = new File(this.directory, name);
+        FileUtils.writeStringToFile(file, content);
+
+        return file;
+    }
+}
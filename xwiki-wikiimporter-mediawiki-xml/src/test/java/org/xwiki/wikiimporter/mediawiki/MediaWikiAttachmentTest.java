@@ -0,0 +1,141 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.File;
+import java.security.MessageDigest;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Test;
+import org.xwiki.test.AbstractComponentTestCase;
+import org.xwiki.wikiimporter.internal.importer.WikiImporterLogger;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiAttachment;
+
+/**
+ * Unit tests for the lookup of the file of a {@link MediaWikiAttachment}.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiAttachmentTest extends AbstractComponentTestCase
+{
+    private File directory;
+
+    private WikiImporterLogger logger;
+
+    /**
+     * {@inheritDoc}
+     * 
+     * @see org.xwiki.test.AbstractComponentTestCase#setUp()
+     */
+    @Override
+    public void setUp() throws Exception
+    {
+        super.setUp();
+
+        this.directory = File.createTempFile("images", "");
+        this.directory.delete();
+        this.directory.mkdirs();
+
+        this.logger = getComponentManager().lookup(WikiImporterLogger.class);
+    }
+
+    @After
+    public void deleteDirectory() throws Exception
+    {
+        FileUtils.deleteDirectory(this.directory);
+    }
+
+    @Test
+    public void testHashedPath() throws Exception
+    {
+        File file = createHashedFile("Logo_image.png", "logo");
+        // A file of the same name elsewhere, which a walk of the directory couldn't tell apart.
+        createFile("archive/Logo_image.png", "old logo");
+
+        // The name is normalized as MediaWiki does before being hashed.
+        MediaWikiAttachment attachment = createAttachment("logo image.png");
+
+        Assert.assertEquals(file, attachment.getFile());
+        Assert.assertEquals("logo", new String(attachment.getContent(), "UTF-8"));
+        Assert.assertEquals(4, attachment.getFileSize());
+    }
+
+    @Test
+    public void testFallbackOnWalk() throws Exception
+    {
+        File file = createFile("other/Diagram.svg", "<svg/>");
+
+        Assert.assertEquals(file, createAttachment("Diagram.svg").getFile());
+    }
+
+    @Test
+    public void testMissingFile() throws Exception
+    {
+        createHashedFile("Logo.png", "logo");
+
+        MediaWikiAttachment attachment = createAttachment("Missing.png");
+
+        Assert.assertNull(attachment.getFile());
+        Assert.assertNull(attachment.getContent());
+        Assert.assertEquals(0, attachment.getFileSize());
+    }
+
+    @Test
+    public void testNamesOutsideOfDirectory() throws Exception
+    {
+        File secret = new File(this.directory.getParentFile(), this.directory.getName() + "-secret.txt");
+        FileUtils.writeStringToFile(secret, "secret", "UTF-8");
+        try {
+            Assert.assertNull(createAttachment("../" + secret.getName()).getFile());
+            Assert.assertNull(createAttachment(".." + File.separator + secret.getName()).getFile());
+            Assert.assertNull(createAttachment("a/../../" + secret.getName()).getFile());
+        } finally {
+            secret.delete();
+        }
+    }
+
+    private MediaWikiAttachment createAttachment(String fileName)
+    {
+        return new MediaWikiAttachment(this.directory.getAbsolutePath(), fileName, "", this.logger);
+    }
+
+    /**
+     * @param name the name of the file as stored by MediaWiki
+     * @return the file created in the <tt>x/xy</tt> sub directory given by the MD5 hash of its name
+     */
+    private File createHashedFile(String name, String content) throws Exception
+    {
+        byte[] hash = MessageDigest.getInstance("MD5").digest(name.getBytes("UTF-8"));
+        String digits = String.format("%02x", hash[0] & 0xff);
+
+        return createFile(digits.charAt(0) + "/" + digits + "/" + name, content);
+    }
+
+    private File createFile(String path, String content) throws Exception
+    {
+        File file = new File(this.directory, path);
+        FileUtils.writeStringToFile(file, content, "UTF-8");
+
+        return file;
+    }
+}
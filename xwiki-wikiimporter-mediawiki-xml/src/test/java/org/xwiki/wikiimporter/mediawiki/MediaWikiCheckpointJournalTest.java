@@ -0,0 +1,293 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.File;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiCheckpointJournal;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPage;
+import org.xwiki.wikiimporter.internal.mediawiki.wiki.MediaWikiPageRevision;
+
+/**
+ * Unit tests for {@link MediaWikiCheckpointJournal}.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiCheckpointJournalTest
+{
+    private File journalFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.journalFile = File.createTempFile("journal", ".log");
+        this.journalFile.delete();
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.journalFile.delete();
+    }
+
+    @Test
+    public void testNewJournal() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        Assert.assertEquals(-1, journal.getResumeOffset());
+        Assert.assertFalse(journal.isCommitted("1"));
+    }
+
+    @Test
+    public void testSequentialResume() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        importPage(journal, "1", 100);
+        importPage(journal, "2", 200);
+        journal.begin("3", 300);
+        journal.close();
+
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        Assert.assertEquals(200, journal.getResumeOffset());
+        Assert.assertTrue(journal.isCommitted("2"));
+        Assert.assertFalse(journal.isCommitted("3"));
+    }
+
+    @Test
+    public void testRestart() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        importPage(journal, "1", 100);
+        journal.close();
+
+        // Not resuming starts a new journal.
+        journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        journal.close();
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        Assert.assertEquals(-1, journal.getResumeOffset());
+        Assert.assertFalse(journal.isCommitted("1"));
+    }
+
+    @Test
+    public void testUncommittedPageHoldsWatermark() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        importPage(journal, "1", 100);
+        // The import is interrupted while page 2 is saved.
+        journal.begin("2", 200);
+        importPage(journal, "3", 300);
+        importPage(journal, "4", 400);
+        journal.close();
+
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        Assert.assertEquals(200, journal.getResumeOffset());
+        Assert.assertFalse(journal.isCommitted("2"));
+        Assert.assertTrue(journal.isCommitted("3"));
+        Assert.assertTrue(journal.isCommitted("4"));
+    }
+
+    @Test
+    public void testFailedPage() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        importPage(journal, "1", 100);
+        journal.begin("2", 200);
+        journal.fail(createPage("2"));
+        importPage(journal, "3", 300);
+        importPage(journal, "4", 400);
+        journal.begin("5", 500);
+        journal.fail(createPage("5"));
+        journal.close();
+
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        // The failed pages don't hold the watermark, the ones before it are retried by id, the others are read again.
+        Assert.assertEquals(500, journal.getResumeOffset());
+        Assert.assertFalse(journal.isCommitted("2"));
+        Assert.assertFalse(journal.isCommitted("4"));
+        Assert.assertFalse(journal.isCommitted("5"));
+        Assert.assertEquals(1, journal.getFailedPages().size());
+        Assert.assertEquals(Long.valueOf(200), journal.getFailedPages().get("2"));
+    }
+
+    @Test
+    public void testFailedPageRetried() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        journal.begin("1", 100);
+        journal.fail(createPage("1"));
+        journal.begin("2", 200);
+        journal.fail(createPage("2"));
+        importPage(journal, "3", 300);
+        journal.close();
+
+        // Page 1 is saved when retried, page 2 fails again.
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        Assert.assertEquals(2, journal.getFailedPages().size());
+        importPage(journal, "1", 100);
+        journal.begin("2", 200);
+        journal.fail(createPage("2"));
+        importPage(journal, "4", 400);
+        journal.close();
+
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        Assert.assertEquals(400, journal.getResumeOffset());
+        Assert.assertEquals(1, journal.getFailedPages().size());
+        Assert.assertEquals(Long.valueOf(200), journal.getFailedPages().get("2"));
+    }
+
+    @Test
+    public void testTruncatedLine() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        importPage(journal, "1", 100);
+        journal.close();
+
+        // A crash while writing the line of page 25.
+        FileUtils.writeStringToFile(this.journalFile, "200 200 2", "UTF-8", true);
+
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        Assert.assertEquals(100, journal.getResumeOffset());
+        Assert.assertFalse(journal.isCommitted("2"));
+    }
+
+    @Test
+    public void testInterleavedRanges() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        journal.beginRange(100);
+        journal.beginRange(500);
+
+        // The second range is imported faster than the first one.
+        journal.begin("1", 100);
+        journal.begin("5", 500);
+        commit(journal, "5");
+        journal.begin("6", 600);
+        commit(journal, "1");
+        journal.begin("2", 200);
+        commit(journal, "6");
+        journal.endRange(500);
+        commit(journal, "2");
+        // The first range is interrupted between two pages.
+        journal.close();
+
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        // The first range is still in flight, the pages after page 2 haven't been read yet.
+        Assert.assertEquals(100, journal.getResumeOffset());
+        Assert.assertTrue(journal.isCommitted("1"));
+        Assert.assertTrue(journal.isCommitted("2"));
+        Assert.assertTrue(journal.isCommitted("5"));
+        Assert.assertTrue(journal.isCommitted("6"));
+    }
+
+    @Test
+    public void testCompletedRanges() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        journal.beginRange(100);
+        journal.beginRange(500);
+
+        journal.begin("5", 500);
+        journal.begin("1", 100);
+        commit(journal, "1");
+        journal.endRange(100);
+        journal.begin("6", 600);
+        commit(journal, "5");
+        commit(journal, "6");
+        journal.close();
+
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        // The first range is complete, only the second one is still in flight.
+        Assert.assertEquals(500, journal.getResumeOffset());
+        Assert.assertFalse(journal.isCommitted("1"));
+        Assert.assertTrue(journal.isCommitted("5"));
+        Assert.assertTrue(journal.isCommitted("6"));
+    }
+
+    @Test
+    public void testResumeTwice() throws Exception
+    {
+        MediaWikiCheckpointJournal journal = new MediaWikiCheckpointJournal(this.journalFile, false);
+        importPage(journal, "1", 100);
+        journal.begin("2", 200);
+        importPage(journal, "3", 300);
+        journal.close();
+
+        // Resume from page 2, page 3 is skipped.
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        Assert.assertEquals(200, journal.getResumeOffset());
+        Assert.assertTrue(journal.isCommitted("3"));
+        importPage(journal, "2", 200);
+        importPage(journal, "4", 400);
+        journal.close();
+
+        journal = new MediaWikiCheckpointJournal(this.journalFile, true);
+        journal.close();
+
+        Assert.assertEquals(400, journal.getResumeOffset());
+        Assert.assertTrue(journal.isCommitted("4"));
+        Assert.assertFalse(journal.isCommitted("3"));
+    }
+
+    private static void importPage(MediaWikiCheckpointJournal journal, String pageId, long offset) throws Exception
+    {
+        journal.begin(pageId, offset);
+        commit(journal, pageId);
+    }
+
+    private static void commit(MediaWikiCheckpointJournal journal, String pageId) throws Exception
+    {
+        journal.commit(createPage(pageId));
+    }
+
+    private static MediaWikiPage createPage(String pageId)
+    {
+        MediaWikiPage page = new MediaWikiPage("Main");
+        page.setId(pageId);
+        MediaWikiPageRevision revision = new MediaWikiPageRevision();
+        revision.setVersion("1");
+        page.addRevision(revision);
+
+        return page;
+    }
+}
@@ -0,0 +1,152 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpSplitter;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiXmlReader;
+
+/**
+ * Unit tests for {@link MediaWikiDumpSplitter}.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiDumpSplitterTest
+{
+    private File dumpFile;
+
+    private MediaWikiDumpSplitter splitter;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.dumpFile = File.createTempFile("MediaWikiXML", ".xml");
+        FileUtils.copyURLToFile(getClass().getResource("/MediaWikiXML.xml"), this.dumpFile);
+        this.splitter = new MediaWikiDumpSplitter(this.dumpFile);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.splitter.close();
+        this.dumpFile.delete();
+    }
+
+    @Test
+    public void testSplit() throws Exception
+    {
+        List<Long> pageOffsets = getPageOffsets();
+
+        for (int count = 1; count <= 6; ++count) {
+            long[] boundaries = this.splitter.split(count);
+
+            Assert.assertTrue(boundaries.length >= 2 && boundaries.length <= count + 1);
+            Assert.assertEquals(pageOffsets.get(0).longValue(), boundaries[0]);
+
+            List<String> ids = new ArrayList<String>();
+            List<Long> offsets = new ArrayList<Long>();
+            for (int i = 0; i < boundaries.length - 1; ++i) {
+                Assert.assertTrue(boundaries[i] < boundaries[i + 1]);
+                if (i > 0) {
+                    Assert.assertTrue(pageOffsets.contains(boundaries[i]));
+                }
+                for (MediaWikiDumpPage page : readRange(boundaries[i], boundaries[i + 1])) {
+                    ids.add(page.getId());
+                    offsets.add(page.getOffset());
+                }
+            }
+
+            Assert.assertEquals("[33, 34, 35, 36]", ids.toString());
+            Assert.assertEquals(pageOffsets, offsets);
+        }
+    }
+
+    @Test
+    public void testSplitFrom() throws Exception
+    {
+        List<Long> pageOffsets = getPageOffsets();
+
+        long[] boundaries = this.splitter.split(2, pageOffsets.get(2));
+        Assert.assertEquals(pageOffsets.get(2).longValue(), boundaries[0]);
+
+        List<String> ids = new ArrayList<String>();
+        for (int i = 0; i < boundaries.length - 1; ++i) {
+            for (MediaWikiDumpPage page : readRange(boundaries[i], boundaries[i + 1])) {
+                ids.add(page.getId());
+            }
+        }
+
+        Assert.assertEquals("[35, 36]", ids.toString());
+    }
+
+    @Test
+    public void testOpenRange() throws Exception
+    {
+        List<Long> pageOffsets = getPageOffsets();
+
+        List<MediaWikiDumpPage> pages = readRange(pageOffsets.get(1), pageOffsets.get(3));
+
+        Assert.assertEquals(2, pages.size());
+        Assert.assertEquals("34", pages.get(0).getId());
+        Assert.assertEquals(pageOffsets.get(1).longValue(), pages.get(0).getOffset());
+        Assert.assertEquals("35", pages.get(1).getId());
+        Assert.assertEquals(pageOffsets.get(2).longValue(), pages.get(1).getOffset());
+    }
+
+    private List<MediaWikiDumpPage> readRange(long start, long end) throws Exception
+    {
+        List<MediaWikiDumpPage> pages = new ArrayList<MediaWikiDumpPage>();
+        MediaWikiXmlReader reader = new MediaWikiXmlReader(this.splitter.openRange(start, end));
+        try {
+            for (MediaWikiDumpPage page = reader.nextPage(); page != null; page = reader.nextPage()) {
+                pages.add(page);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return pages;
+    }
+
+    /**
+     * @return the offsets of the {@code <page>} tags of the dump file
+     */
+    private List<Long> getPageOffsets() throws Exception
+    {
+        String dump = new String(FileUtils.readFileToByteArray(this.dumpFile), "ISO-8859-1");
+
+        List<Long> offsets = new ArrayList<Long>();
+        for (int index = dump.indexOf("<page>"); index != -1; index = dump.indexOf("<page>", index + 1)) {
+            offsets.add(Long.valueOf(index));
+        }
+
+        return offsets;
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.File;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiImporterException;
+import org.xwiki.wikiimporter.internal.mediawiki.MediaWikiMacroMapping;
+
+/**
+ * Unit tests for {@link MediaWikiMacroMapping}.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiMacroMappingTest
+{
+    private static final String UTF8 = "UTF-8";
+
+    private File mappingFile;
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.mappingFile = File.createTempFile("MediaWikiMacroMapping", ".properties");
+        FileUtils.writeStringToFile(this.mappingFile, "# Quotes\n\nQuote=quote|author>source|style=fancy\n"
+            + "  info = info  \nnote=box|title>label\n", UTF8);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.mappingFile.delete();
+    }
+
+    @Test
+    public void testDefaultMapping() throws Exception
+    {
+        MediaWikiMacroMapping mapping = MediaWikiMacroMapping.getMapping("");
+
+        MediaWikiMacroMapping.Macro toc = mapping.getMacro("toc");
+        Assert.assertEquals("toc", toc.getId());
+        Assert.assertEquals("{numbered=true}", toc.convertParameters(null).toString());
+        Assert.assertEquals("toc", mapping.getMacro("forcetoc").getId());
+        Assert.assertNull(mapping.getMacro("Quote"));
+    }
+
+    @Test
+    public void testMapping() throws Exception
+    {
+        MediaWikiMacroMapping mapping = MediaWikiMacroMapping.getMapping(this.mappingFile.getAbsolutePath());
+
+        Assert.assertEquals("quote", mapping.getMacro("Quote").getId());
+        Assert.assertEquals("info", mapping.getMacro("info").getId());
+        Assert.assertEquals("box", mapping.getMacro("note").getId());
+        // The table of contents is always mapped.
+        Assert.assertEquals("toc", mapping.getMacro("toc").getId());
+        Assert.assertNull(mapping.getMacro("unknown"));
+    }
+
+    @Test
+    public void testFirstLetterCase() throws Exception
+    {
+        MediaWikiMacroMapping mapping = MediaWikiMacroMapping.getMapping(this.mappingFile.getAbsolutePath());
+
+        Assert.assertSame(mapping.getMacro("Quote"), mapping.getMacro("quote"));
+        Assert.assertSame(mapping.getMacro("note"), mapping.getMacro("Note"));
+        Assert.assertNull(mapping.getMacro("QUOTE"));
+    }
+
+    @Test
+    public void testConvertParameters() throws Exception
+    {
+        MediaWikiMacroMapping mapping = MediaWikiMacroMapping.getMapping(this.mappingFile.getAbsolutePath());
+
+        Map<String, String> parameters = new LinkedHashMap<String, String>();
+        parameters.put("author", "Ada");
+        parameters.put("1", "To be or not to be");
+
+        MediaWikiMacroMapping.Macro quote = mapping.getMacro("Quote");
+        Assert.assertEquals("{source=Ada, 1=To be or not to be, style=fancy}", quote.convertParameters(parameters)
+            .toString());
+        Assert.assertEquals("{style=fancy}", quote.convertParameters(null).toString());
+        Assert.assertEquals("{author=Ada, 1=To be or not to be}", parameters.toString());
+
+        // The parameters of the templates without renamed nor fixed parameters are kept as is.
+        Assert.assertSame(parameters, mapping.getMacro("info").convertParameters(parameters));
+    }
+
+    @Test
+    public void testMappingShared() throws Exception
+    {
+        String path = this.mappingFile.getAbsolutePath();
+        MediaWikiMacroMapping mapping = MediaWikiMacroMapping.getMapping(path);
+
+        Assert.assertSame(mapping, MediaWikiMacroMapping.getMapping(path));
+
+        // Reloaded once the file changes.
+        FileUtils.writeStringToFile(this.mappingFile, "Quote=blockquote\n", UTF8);
+        this.mappingFile.setLastModified(this.mappingFile.lastModified() + 2000);
+        MediaWikiMacroMapping reloadedMapping = MediaWikiMacroMapping.getMapping(path);
+
+        Assert.assertNotSame(mapping, reloadedMapping);
+        Assert.assertEquals("blockquote", reloadedMapping.getMacro("Quote").getId());
+        Assert.assertNull(reloadedMapping.getMacro("note"));
+    }
+
+    @Test(expected = MediaWikiImporterException.class)
+    public void testInvalidMapping() throws Exception
+    {
+        FileUtils.writeStringToFile(this.mappingFile, "Quote=|author>source\n", UTF8);
+
+        MediaWikiMacroMapping.getMapping(this.mappingFile.getAbsolutePath());
+    }
+
+    @Test(expected = MediaWikiImporterException.class)
+    public void testMissingMappingFile() throws Exception
+    {
+        this.mappingFile.delete();
+
+        MediaWikiMacroMapping.getMapping(this.mappingFile.getAbsolutePath());
+    }
+}
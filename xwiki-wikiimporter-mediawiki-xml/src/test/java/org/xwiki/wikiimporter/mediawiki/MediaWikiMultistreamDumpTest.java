@@ -0,0 +1,178 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.compress.compressors.bzip2.BZip2CompressorOutputStream;
+import org.apache.commons.io.FileUtils;
+import org.apache.commons.io.IOUtils;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiMultistreamDump;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiXmlReader;
+
+/**
+ * Unit tests for {@link MediaWikiMultistreamDump}.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiMultistreamDumpTest
+{
+    private static final String UTF8 = "UTF-8";
+
+    private File dumpFile;
+
+    private File indexFile;
+
+    /**
+     * The offsets of the bzip2 streams of the dump holding the pages.
+     */
+    private List<Long> streamOffsets = new ArrayList<Long>();
+
+    @Before
+    public void setUp() throws Exception
+    {
+        this.dumpFile = File.createTempFile("MediaWikiXML-multistream", ".xml.bz2");
+        this.indexFile = File.createTempFile("MediaWikiXML-multistream-index", ".txt");
+
+        // Same layout as the Wikipedia dumps: the header, the streams of pages and the closing root element, each one
+        // compressed on its own.
+        String dump = IOUtils.toString(getClass().getResourceAsStream("/MediaWikiXML.xml"), UTF8);
+        List<Integer> pageOffsets = new ArrayList<Integer>();
+        for (int index = dump.indexOf("<page>"); index != -1; index = dump.indexOf("<page>", index + 1)) {
+            pageOffsets.add(index);
+        }
+        int end = dump.lastIndexOf("</mediawiki>");
+
+        ByteArrayOutputStream multistream = new ByteArrayOutputStream();
+        writeStream(multistream, dump.substring(0, pageOffsets.get(0)));
+        this.streamOffsets.add(Long.valueOf(multistream.size()));
+        writeStream(multistream, dump.substring(pageOffsets.get(0), pageOffsets.get(2)));
+        this.streamOffsets.add(Long.valueOf(multistream.size()));
+        writeStream(multistream, dump.substring(pageOffsets.get(2), end));
+        writeStream(multistream, dump.substring(end));
+        FileUtils.writeByteArrayToFile(this.dumpFile, multistream.toByteArray());
+
+        // The pages of the same stream share its offset.
+        StringBuilder index = new StringBuilder();
+        index.append(this.streamOffsets.get(0)).append(":33:Page 33\n");
+        index.append(this.streamOffsets.get(0)).append(":34:Page 34\n");
+        index.append(this.streamOffsets.get(1)).append(":35:Page 35\n");
+        index.append(this.streamOffsets.get(1)).append(":36:Page 36\n");
+        FileUtils.writeStringToFile(this.indexFile, index.toString(), UTF8);
+    }
+
+    @After
+    public void tearDown() throws Exception
+    {
+        this.dumpFile.delete();
+        this.indexFile.delete();
+    }
+
+    @Test
+    public void testStreamOffsets() throws Exception
+    {
+        MediaWikiMultistreamDump dump = new MediaWikiMultistreamDump(this.dumpFile, this.indexFile);
+
+        Assert.assertEquals(2, dump.getStreamCount());
+        Assert.assertEquals(this.streamOffsets.get(0).longValue(), dump.getStreamOffset(0));
+        Assert.assertEquals(this.streamOffsets.get(1).longValue(), dump.getStreamOffset(1));
+    }
+
+    @Test
+    public void testOpenStream() throws Exception
+    {
+        MediaWikiMultistreamDump dump = new MediaWikiMultistreamDump(this.dumpFile, this.indexFile);
+
+        Assert.assertEquals("[33, 34]", readStream(dump, 0).toString());
+        Assert.assertEquals("[35, 36]", readStream(dump, 1).toString());
+        // The streams can be read in any order.
+        Assert.assertEquals("[33, 34]", readStream(dump, 0).toString());
+    }
+
+    @Test
+    public void testCompressedIndex() throws Exception
+    {
+        File compressedIndexFile = File.createTempFile("MediaWikiXML-multistream-index", ".txt.bz2");
+        try {
+            ByteArrayOutputStream compressedIndex = new ByteArrayOutputStream();
+            writeStream(compressedIndex, FileUtils.readFileToString(this.indexFile, UTF8));
+            FileUtils.writeByteArrayToFile(compressedIndexFile, compressedIndex.toByteArray());
+
+            MediaWikiMultistreamDump dump = new MediaWikiMultistreamDump(this.dumpFile, compressedIndexFile);
+
+            Assert.assertEquals(2, dump.getStreamCount());
+            Assert.assertEquals("[35, 36]", readStream(dump, 1).toString());
+        } finally {
+            compressedIndexFile.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testEmptyIndex() throws Exception
+    {
+        FileUtils.writeStringToFile(this.indexFile, "", UTF8);
+
+        new MediaWikiMultistreamDump(this.dumpFile, this.indexFile);
+    }
+
+    @Test(expected = IOException.class)
+    public void testInvalidIndex() throws Exception
+    {
+        FileUtils.writeStringToFile(this.indexFile, "offset:33:Page 33\n", UTF8);
+
+        new MediaWikiMultistreamDump(this.dumpFile, this.indexFile);
+    }
+
+    private void writeStream(OutputStream stream, String content) throws IOException
+    {
+        BZip2CompressorOutputStream bzip2Stream = new BZip2CompressorOutputStream(stream);
+        bzip2Stream.write(content.getBytes(UTF8));
+        bzip2Stream.finish();
+    }
+
+    /**
+     * @return the ids of the pages of the given stream
+     */
+    private List<String> readStream(MediaWikiMultistreamDump dump, int index) throws Exception
+    {
+        List<String> ids = new ArrayList<String>();
+        MediaWikiXmlReader reader = new MediaWikiXmlReader(dump.openStream(index));
+        try {
+            for (MediaWikiDumpPage page = reader.nextPage(); page != null; page = reader.nextPage()) {
+                ids.add(page.getId());
+            }
+        } finally {
+            reader.close();
+        }
+
+        return ids;
+    }
+}
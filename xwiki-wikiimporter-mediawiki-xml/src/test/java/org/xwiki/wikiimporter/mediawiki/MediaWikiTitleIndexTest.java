@@ -0,0 +1,158 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import junit.framework.Assert;
+
+import org.junit.Before;
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiNamespaces;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiTitleIndex;
+
+/**
+ * Unit tests for {@link MediaWikiTitleIndex}.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiTitleIndexTest
+{
+    private MediaWikiTitleIndex index;
+
+    @Before
+    public void setUp()
+    {
+        MediaWikiNamespaces namespaces = new MediaWikiNamespaces();
+        namespaces.addNamespace("0", null);
+        namespaces.addNamespace("6", "File");
+        namespaces.addNamespace("8", "MediaWiki");
+
+        this.index = new MediaWikiTitleIndex();
+        this.index.setNamespaces(namespaces);
+    }
+
+    @Test
+    public void testNormalize()
+    {
+        Assert.assertEquals("Main Page", this.index.normalize("main_Page"));
+        Assert.assertEquals("Main Page", this.index.normalize("  Main \t__ Page  "));
+        Assert.assertEquals("Main Page", this.index.normalize("Main Page#Section"));
+        Assert.assertEquals("Main Page", this.index.normalize(":Main Page"));
+        Assert.assertEquals("File:Logo.png", this.index.normalize("file: logo.png"));
+        Assert.assertEquals("MediaWiki:Sidebar", this.index.normalize(":mediaWiki:sidebar"));
+        // Not a namespace, only the first letter of the title is capitalized.
+        Assert.assertEquals("Foo:bar", this.index.normalize("foo:bar"));
+        Assert.assertNull(this.index.normalize("#Section"));
+        Assert.assertNull(this.index.normalize(" _ "));
+        Assert.assertNull(this.index.normalize(null));
+    }
+
+    @Test
+    public void testFind()
+    {
+        this.index.add("Main_Page");
+        this.index.add("File:Logo.png");
+        this.index.add("Main Page");
+        this.index.build();
+
+        Assert.assertEquals(2, this.index.size());
+        Assert.assertEquals("Main Page", this.index.find("main_Page#History"));
+        // Only the first letter is case insensitive.
+        Assert.assertNull(this.index.find("Main page"));
+        Assert.assertEquals("File:Logo.png", this.index.find("file:logo.png"));
+        Assert.assertNull(this.index.find("Missing page"));
+        Assert.assertNull(this.index.find(""));
+    }
+
+    @Test
+    public void testGrow()
+    {
+        for (int i = 0; i < 5000; ++i) {
+            this.index.add("Page " + i);
+        }
+        this.index.build();
+
+        Assert.assertEquals(5000, this.index.size());
+        Assert.assertEquals("Page 0", this.index.find("page_0"));
+        Assert.assertEquals("Page 4999", this.index.find("Page 4999"));
+        Assert.assertNull(this.index.find("Page 5000"));
+    }
+
+    @Test
+    public void testRedirectChain()
+    {
+        this.index.add("A");
+        this.index.add("B");
+        this.index.add("C");
+        this.index.addRedirect("A", "b");
+        this.index.addRedirect("B", "C#Section");
+        this.index.build();
+
+        Assert.assertEquals(2, this.index.getRedirectCount());
+        Assert.assertEquals("C", this.index.find("a"));
+        Assert.assertEquals("C", this.index.find("B"));
+        Assert.assertEquals("C", this.index.find("C"));
+    }
+
+    @Test
+    public void testRedirectToMissingPage()
+    {
+        this.index.add("A");
+        this.index.addRedirect("A", "Missing");
+        this.index.build();
+
+        Assert.assertEquals(0, this.index.getRedirectCount());
+        Assert.assertEquals("A", this.index.find("A"));
+    }
+
+    @Test
+    public void testRedirectLoop()
+    {
+        this.index.add("A");
+        this.index.add("B");
+        this.index.add("C");
+        this.index.addRedirect("A", "B");
+        this.index.addRedirect("B", "A");
+        this.index.addRedirect("C", "C");
+        this.index.build();
+
+        // The links to the pages of the loop point to the pages themselves.
+        Assert.assertEquals(0, this.index.getRedirectCount());
+        Assert.assertEquals("A", this.index.find("A"));
+        Assert.assertEquals("B", this.index.find("B"));
+        Assert.assertEquals("C", this.index.find("C"));
+    }
+
+    @Test
+    public void testLongRedirectChain()
+    {
+        for (int i = 0; i <= 20; ++i) {
+            this.index.add("Page " + i);
+            if (i > 0) {
+                this.index.addRedirect("Page " + i, "Page " + (i - 1));
+            }
+        }
+        this.index.build();
+
+        Assert.assertEquals("Page 0", this.index.find("Page 1"));
+        Assert.assertEquals("Page 0", this.index.find("Page 10"));
+        // Too long a chain, the link points to the redirect itself.
+        Assert.assertEquals("Page 20", this.index.find("Page 20"));
+    }
+}
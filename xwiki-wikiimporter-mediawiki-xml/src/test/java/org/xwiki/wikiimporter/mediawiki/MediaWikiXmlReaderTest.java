@@ -0,0 +1,260 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.FileUtils;
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPageFilter;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpRevision;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpUpload;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiTitleIndex;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiXmlReader;
+
+/**
+ * Unit tests for {@link MediaWikiXmlReader}.
+ * 
+ * @version $Id$
+ */
+public class MediaWikiXmlReaderTest
+{
+    private static final String DUMP_START =
+        "<mediawiki><siteinfo><namespaces><namespace key=\"0\" /><namespace key=\"6\">File</namespace></namespaces>"
+            + "</siteinfo>";
+
+    private static final String DUMP_END = "</mediawiki>";
+
+    @Test
+    public void testReadPages() throws Exception
+    {
+        List<MediaWikiDumpPage> pages = readAll(new MediaWikiXmlReader(openDump()));
+
+        Assert.assertEquals(4, pages.size());
+        Assert.assertEquals("[33, 34, 35, 36]", getIds(pages).toString());
+
+        MediaWikiDumpPage page = pages.get(0);
+        Assert.assertEquals("MediaWiki:Bureaucrattitle", page.getTitle());
+        Assert.assertEquals("8", page.getNamespace());
+        Assert.assertEquals("MediaWiki", page.getNamespacePrefix());
+        Assert.assertEquals(1, page.getRevisions().size());
+
+        MediaWikiDumpRevision revision = page.getRevisions().get(0);
+        Assert.assertEquals("992", revision.getId());
+        Assert.assertEquals("2004-07-25T20:52:38Z", revision.getTimestamp());
+        Assert.assertEquals("Guanaco", revision.getAuthor());
+        Assert.assertTrue(revision.isMinor());
+        Assert.assertEquals("Bureaucrat access needed", revision.getText());
+
+        revision = pages.get(2).getRevisions().get(0);
+        Assert.assertFalse(revision.isMinor());
+        Assert.assertEquals("My changes", revision.getText());
+        Assert.assertTrue(revision.getComment().startsWith("changed to \"my changes\""));
+    }
+
+    @Test
+    public void testPageFilter() throws Exception
+    {
+        final List<String> filteredIds = new ArrayList<String>();
+
+        MediaWikiXmlReader reader = new MediaWikiXmlReader(openDump());
+        reader.setPageFilter(new MediaWikiDumpPageFilter()
+        {
+            public boolean accept(MediaWikiDumpPage page)
+            {
+                // The header of the page is read, not its revisions.
+                Assert.assertNotNull(page.getTitle());
+                Assert.assertTrue(page.getRevisions().isEmpty());
+                filteredIds.add(page.getId());
+
+                return "35".equals(page.getId()) || "36".equals(page.getId());
+            }
+        });
+        List<MediaWikiDumpPage> pages = readAll(reader);
+
+        Assert.assertEquals("[33, 34, 35, 36]", filteredIds.toString());
+        Assert.assertEquals("[35, 36]", getIds(pages).toString());
+        Assert.assertEquals("3262", pages.get(0).getRevisions().get(0).getId());
+    }
+
+    @Test
+    public void testLastRevisionOnly() throws Exception
+    {
+        String dump =
+            DUMP_START + "<page><title>History</title><id>1</id>" + revision("10", "first")
+                + revision("11", "second") + revision("12", "third") + "</page>"
+                + "<page><title>Next</title><id>2</id>" + revision("20", "only") + "</page>" + DUMP_END;
+
+        List<MediaWikiDumpPage> pages = readAll(new MediaWikiXmlReader(toStream(dump)));
+        Assert.assertEquals(3, pages.get(0).getRevisions().size());
+
+        MediaWikiXmlReader reader = new MediaWikiXmlReader(toStream(dump));
+        reader.setLastRevisionOnly(true);
+        pages = readAll(reader);
+
+        Assert.assertEquals(2, pages.size());
+        Assert.assertEquals(1, pages.get(0).getRevisions().size());
+        Assert.assertEquals("12", pages.get(0).getRevisions().get(0).getId());
+        Assert.assertEquals("third", pages.get(0).getRevisions().get(0).getText());
+        Assert.assertEquals("20", pages.get(1).getRevisions().get(0).getId());
+    }
+
+    @Test
+    public void testUploads() throws Exception
+    {
+        // "Hello, World!" in base64, split over lines as in the dumps.
+        String dump =
+            DUMP_START + "<page><title>File:Hello.txt</title><id>3</id>" + revision("30", "A file")
+                + "<upload><timestamp>2010-01-01T00:00:00Z</timestamp><filename>Hello.txt</filename>"
+                + "<contents encoding=\"base64\">SGVsbG8s\n  IFdv\ncmxkIQ==\n</contents></upload>"
+                + "<upload><filename>Missing.txt</filename></upload>"
+                + "<upload><filename>Other.txt</filename><contents encoding=\"url\">x</contents></upload>"
+                + "</page>" + DUMP_END;
+
+        List<MediaWikiDumpPage> pages = readAll(new MediaWikiXmlReader(toStream(dump)));
+
+        Assert.assertEquals(1, pages.size());
+        MediaWikiDumpPage page = pages.get(0);
+        Assert.assertEquals("6", page.getNamespace());
+        Assert.assertEquals(1, page.getRevisions().size());
+
+        // The uploads without base64 content are dropped.
+        Assert.assertEquals(1, page.getUploads().size());
+        MediaWikiDumpUpload upload = page.getUploads().get(0);
+        Assert.assertEquals("Hello.txt", upload.getFileName());
+        File file = upload.getFile();
+        Assert.assertEquals("Hello, World!", FileUtils.readFileToString(file, "UTF-8"));
+
+        page.deleteUploads();
+        Assert.assertFalse(file.exists());
+        Assert.assertTrue(page.getUploads().isEmpty());
+    }
+
+    @Test
+    public void testUploadsOfRejectedPagesAreNotDecoded() throws Exception
+    {
+        String dump =
+            DUMP_START + "<page><title>File:Hello.txt</title><id>3</id>"
+                + "<upload><filename>Hello.txt</filename><contents encoding=\"base64\">SGVsbG8=</contents></upload>"
+                + "</page>" + DUMP_END;
+
+        MediaWikiXmlReader reader = new MediaWikiXmlReader(toStream(dump));
+        reader.setPageFilter(new MediaWikiDumpPageFilter()
+        {
+            public boolean accept(MediaWikiDumpPage page)
+            {
+                return false;
+            }
+        });
+
+        Assert.assertNull(reader.nextPage());
+    }
+
+    @Test
+    public void testRedirects() throws Exception
+    {
+        String dump =
+            DUMP_START + "<page><title>Old name</title><id>1</id><redirect title=\"Older name\" />"
+                + revision("10", "#REDIRECT [[Older name]]") + "</page>"
+                + "<page><title>Older name</title><id>2</id><redirect title=\"Target\" />"
+                + revision("20", "#REDIRECT [[Target]]") + "</page>"
+                + "<page><title>Target</title><id>3</id>" + revision("30", "Content") + "</page>" + DUMP_END;
+
+        List<MediaWikiDumpPage> pages = readAll(new MediaWikiXmlReader(toStream(dump)));
+
+        Assert.assertEquals(3, pages.size());
+        Assert.assertEquals("Older name", pages.get(0).getRedirect());
+        Assert.assertEquals("Target", pages.get(1).getRedirect());
+        Assert.assertNull(pages.get(2).getRedirect());
+        Assert.assertEquals("#REDIRECT [[Older name]]", pages.get(0).getRevisions().get(0).getText());
+
+        // The redirects are collected from the headers of the pages, as the title index pass does.
+        final MediaWikiTitleIndex titleIndex = new MediaWikiTitleIndex();
+        MediaWikiXmlReader reader = new MediaWikiXmlReader(toStream(dump));
+        titleIndex.setNamespaces(reader.getNamespaces());
+        reader.setPageFilter(new MediaWikiDumpPageFilter()
+        {
+            public boolean accept(MediaWikiDumpPage page)
+            {
+                if (page.getRedirect() != null) {
+                    titleIndex.addRedirect(page.getTitle(), page.getRedirect());
+                }
+                titleIndex.add(page.getTitle());
+
+                return false;
+            }
+        });
+        Assert.assertTrue(readAll(reader).isEmpty());
+        titleIndex.build();
+
+        // The links to both redirects point straight to the final target.
+        Assert.assertEquals(2, titleIndex.getRedirectCount());
+        Assert.assertEquals("Target", titleIndex.find("old_name"));
+        Assert.assertEquals("Target", titleIndex.find("Older name#Section"));
+        Assert.assertEquals("Target", titleIndex.find("Target"));
+    }
+
+    private InputStream openDump()
+    {
+        return getClass().getResourceAsStream("/MediaWikiXML.xml");
+    }
+
+    private static InputStream toStream(String dump) throws Exception
+    {
+        return new ByteArrayInputStream(dump.getBytes("UTF-8"));
+    }
+
+    private static String revision(String id, String text)
+    {
+        return "<revision><id>" + id + "</id><contributor><username>Author</username><id>1</id></contributor>"
+            + "<text xml:space=\"preserve\">" + text + "</text></revision>";
+    }
+
+    private static List<MediaWikiDumpPage> readAll(MediaWikiXmlReader reader) throws Exception
+    {
+        List<MediaWikiDumpPage> pages = new ArrayList<MediaWikiDumpPage>();
+        try {
+            for (MediaWikiDumpPage page = reader.nextPage(); page != null; page = reader.nextPage()) {
+                pages.add(page);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return pages;
+    }
+
+    private static List<String> getIds(List<MediaWikiDumpPage> pages)
+    {
+        List<String> ids = new ArrayList<String>();
+        for (MediaWikiDumpPage page : pages) {
+            ids.add(page.getId());
+        }
+
+        return ids;
+    }
+}
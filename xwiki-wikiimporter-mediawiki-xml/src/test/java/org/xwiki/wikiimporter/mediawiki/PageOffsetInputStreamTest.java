@@ -0,0 +1,194 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpPage;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiDumpStreams;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.MediaWikiXmlReader;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.PageOffsetInputStream;
+
+/**
+ * Unit tests for {@link PageOffsetInputStream} and {@link MediaWikiDumpStreams#openAt(File, long)}.
+ * 
+ * @version $Id$
+ */
+public class PageOffsetInputStreamTest
+{
+    private static final String DUMP = "<mediawiki><<page><page></page><pag<page> <page</page></mediawiki>";
+
+    @Test
+    public void testOffsets() throws Exception
+    {
+        PageOffsetInputStream stream = new PageOffsetInputStream(new ByteArrayInputStream(DUMP.getBytes()), 100);
+
+        // Read with a small buffer so that the tags cross the reads.
+        byte[] buffer = new byte[4];
+        while (stream.read(buffer, 0, buffer.length) != -1) {
+            // Read the whole stream.
+        }
+
+        Assert.assertEquals(100 + DUMP.indexOf("<page><page>"), stream.nextPageOffset());
+        Assert.assertEquals(100 + DUMP.indexOf("<page></page>"), stream.nextPageOffset());
+        Assert.assertEquals(100 + DUMP.indexOf("<page> "), stream.nextPageOffset());
+        Assert.assertEquals(-1, stream.nextPageOffset());
+    }
+
+    @Test
+    public void testOffsetsWithSkipAndSingleBytes() throws Exception
+    {
+        PageOffsetInputStream stream = new PageOffsetInputStream(new ByteArrayInputStream(DUMP.getBytes()), 0);
+
+        // Skip into the middle of the first tag, the skipped bytes are scanned too.
+        long skipped = 0;
+        while (skipped < 15) {
+            skipped += stream.skip(15 - skipped);
+        }
+        while (stream.read() != -1) {
+            // Read the rest of the stream.
+        }
+
+        Assert.assertEquals(DUMP.indexOf("<page><page>"), stream.nextPageOffset());
+        Assert.assertEquals(DUMP.indexOf("<page></page>"), stream.nextPageOffset());
+        Assert.assertEquals(DUMP.indexOf("<page> "), stream.nextPageOffset());
+        Assert.assertEquals(-1, stream.nextPageOffset());
+    }
+
+    @Test
+    public void testOpenAt() throws Exception
+    {
+        File dumpFile = createDumpFile(false);
+        try {
+            assertOpenAt(dumpFile);
+        } finally {
+            dumpFile.delete();
+        }
+    }
+
+    @Test
+    public void testOpenAtCompressed() throws Exception
+    {
+        File dumpFile = createDumpFile(true);
+        try {
+            assertOpenAt(dumpFile);
+        } finally {
+            dumpFile.delete();
+        }
+    }
+
+    @Test(expected = IOException.class)
+    public void testOpenAtHeader() throws Exception
+    {
+        File dumpFile = createDumpFile(false);
+        try {
+            MediaWikiDumpStreams.openAt(dumpFile, 10);
+        } finally {
+            dumpFile.delete();
+        }
+    }
+
+    private void assertOpenAt(File dumpFile) throws Exception
+    {
+        List<Long> pageOffsets = getPageOffsets();
+
+        // From the start of the dump.
+        List<MediaWikiDumpPage> pages = read(MediaWikiDumpStreams.openAt(dumpFile, 0));
+        Assert.assertEquals(4, pages.size());
+        for (int i = 0; i < pages.size(); ++i) {
+            Assert.assertEquals(pageOffsets.get(i).longValue(), pages.get(i).getOffset());
+        }
+
+        // From the first page, the offset recorded by the journal once the first page is committed.
+        pages = read(MediaWikiDumpStreams.openAt(dumpFile, pageOffsets.get(0)));
+        Assert.assertEquals(4, pages.size());
+        Assert.assertEquals("33", pages.get(0).getId());
+        for (int i = 0; i < pages.size(); ++i) {
+            Assert.assertEquals(pageOffsets.get(i).longValue(), pages.get(i).getOffset());
+        }
+
+        // From the third page, the offsets are still the ones of the whole dump.
+        pages = read(MediaWikiDumpStreams.openAt(dumpFile, pageOffsets.get(2)));
+        Assert.assertEquals(2, pages.size());
+        Assert.assertEquals("35", pages.get(0).getId());
+        Assert.assertEquals(pageOffsets.get(2).longValue(), pages.get(0).getOffset());
+        Assert.assertEquals("36", pages.get(1).getId());
+        Assert.assertEquals(pageOffsets.get(3).longValue(), pages.get(1).getOffset());
+    }
+
+    private File createDumpFile(boolean compressed) throws Exception
+    {
+        File dumpFile = File.createTempFile("MediaWikiXML", compressed ? ".xml.gz" : ".xml");
+
+        OutputStream output = new FileOutputStream(dumpFile);
+        try {
+            if (compressed) {
+                output = new GZIPOutputStream(output);
+            }
+            IOUtils.copy(getClass().getResourceAsStream("/MediaWikiXML.xml"), output);
+        } finally {
+            output.close();
+        }
+
+        return dumpFile;
+    }
+
+    /**
+     * @return the offsets of the {@code <page>} tags of the uncompressed dump
+     */
+    private List<Long> getPageOffsets() throws Exception
+    {
+        byte[] bytes = IOUtils.toByteArray(getClass().getResourceAsStream("/MediaWikiXML.xml"));
+        String dump = new String(bytes, "ISO-8859-1");
+
+        List<Long> offsets = new ArrayList<Long>();
+        for (int index = dump.indexOf("<page>"); index != -1; index = dump.indexOf("<page>", index + 1)) {
+            offsets.add(Long.valueOf(index));
+        }
+
+        return offsets;
+    }
+
+    private static List<MediaWikiDumpPage> read(PageOffsetInputStream stream) throws Exception
+    {
+        List<MediaWikiDumpPage> pages = new ArrayList<MediaWikiDumpPage>();
+        MediaWikiXmlReader reader = new MediaWikiXmlReader(stream);
+        try {
+            for (MediaWikiDumpPage page = reader.nextPage(); page != null; page = reader.nextPage()) {
+                pages.add(page);
+            }
+        } finally {
+            reader.close();
+        }
+
+        return pages;
+    }
+}
@@ -0,0 +1,176 @@
+/*
+ * See the NOTICE file distributed with this work for additional
+ * information regarding copyright ownership.
+ *
+ * This is free software; you can redistribute it and/or modify it
+ * under the terms of the GNU Lesser General Public License as
+ * published by the Free Software Foundation; either version 2.1 of
+ * the License, or (at your option) any later version.
+ *
+ * This software is distributed in the hope that it will be useful,
+ * but WITHOUT ANY WARRANTY; without even the implied warranty of
+ * MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE. See the GNU
+ * Lesser General Public License for more details.
+ *
+ * You should have received a copy of the GNU Lesser General Public
+ * License along with this software; if not, write to the Free
+ * Software Foundation, Inc., 51 Franklin St, Fifth Floor, Boston, MA
+ * 02110-1301 USA, or see the FSF site: http://www.fsf.org.
+ */
+package org.xwiki.wikiimporter.mediawiki;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+import junit.framework.Assert;
+
+import org.apache.commons.io.IOUtils;
+import org.junit.Test;
+import org.xwiki.wikiimporter.internal.mediawiki.dump.ReadAheadInputStream;
+
+/**
+ * Unit tests for {@link ReadAheadInputStream}.
+ * 
+ * @version $Id$
+ */
+public class ReadAheadInputStreamTest
+{
+    private static final byte[] DATA = "The quick brown fox jumps over the lazy dog".getBytes();
+
+    @Test(timeout = 10000)
+    public void testReadAll() throws Exception
+    {
+        InputStream stream = new ReadAheadInputStream(new ByteArrayInputStream(DATA), 5, 2, "test");
+        try {
+            Assert.assertEquals(new String(DATA), new String(IOUtils.toByteArray(stream)));
+            Assert.assertEquals(-1, stream.read());
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testReadByte() throws Exception
+    {
+        InputStream stream = new ReadAheadInputStream(new ByteArrayInputStream(DATA), 3, 1, "test");
+        try {
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            int c;
+            while ((c = stream.read()) != -1) {
+                output.write(c);
+            }
+            Assert.assertEquals(new String(DATA), new String(output.toByteArray()));
+        } finally {
+            stream.close();
+        }
+    }
+
+    @Test(timeout = 10000)
+    public void testIOExceptionAfterData() throws Exception
+    {
+        IOException failure = new IOException("corrupt");
+        InputStream stream = new ReadAheadInputStream(new FailingInputStream(10, failure), 4, 2, "test");
+
+        byte[] buffer = new byte[10];
+        int length = 0;
+        while (length < buffer.length) {
+            length += stream.read(buffer, length, buffer.length - length);
+        }
+        Assert.assertEquals(new String(DATA, 0, 10), new String(buffer));
+
+        try {
+            stream.read();
+            Assert.fail("The failure of the source should have been thrown");
+        } catch (IOException e) {
+            Assert.assertSame(failure, e);
+        }
+
+        // The failure is thrown again rather than reporting the end of the stream.
+        try {
+            stream.read(buffer, 0, buffer.length);
+            Assert.fail("The failure of the source should have been thrown again");
+        } catch (IOException e) {
+            Assert.assertSame(failure, e);
+        }
+
+        stream.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testRuntimeException() throws Exception
+    {
+        RuntimeException failure = new IllegalStateException("corrupt");
+        InputStream stream = new ReadAheadInputStream(new FailingInputStream(0, failure), 4, 2, "test");
+
+        try {
+            stream.read();
+            Assert.fail("The failure of the source should have been thrown");
+        } catch (IOException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+
+        stream.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testError() throws Exception
+    {
+        Error failure = new OutOfMemoryError("corrupt");
+        InputStream stream = new ReadAheadInputStream(new FailingInputStream(4, failure), 4, 2, "test");
+
+        Assert.assertEquals(4, IOUtils.read(stream, new byte[4]));
+        try {
+            stream.read();
+            Assert.fail("The failure of the source should have been thrown");
+        } catch (IOException e) {
+            Assert.assertSame(failure, e.getCause());
+        }
+
+        stream.close();
+    }
+
+    @Test(timeout = 10000)
+    public void testCloseBeforeEnd() throws Exception
+    {
+        InputStream stream = new ReadAheadInputStream(new ByteArrayInputStream(new byte[1024]), 1, 1, "test");
+        Assert.assertEquals(0, stream.read());
+
+        // The reading thread, blocked on the full queue, must not prevent closing.
+        stream.close();
+    }
+
+    /**
+     * Returns the first bytes of {@link #DATA} and then fails.
+     */
+    private static class FailingInputStream extends InputStream
+    {
+        private final int length;
+
+        private final Throwable failure;
+
+        private int position;
+
+        FailingInputStream(int length, Throwable failure)
+        {
+            this.length = length;
+            this.failure = failure;
+        }
+
+        @Override
+        public int read() throws IOException
+        {
+            if (this.position < this.length) {
+                return DATA[this.position++];
+            }
+
+            if (this.failure instanceof IOException) {
+                throw (IOException) this.failure;
+            } else if (this.failure instanceof RuntimeException) {
+                throw (RuntimeException) this.failure;
+            }
+            throw (Error) this.failure;
+        }
+    }
+}